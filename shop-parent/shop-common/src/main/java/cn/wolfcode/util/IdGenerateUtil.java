@@ -1,23 +1,36 @@
 package cn.wolfcode.util;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * twitter 的分布式环境全局唯一id算法
+ * 1.时间戳和序列号打包在一个AtomicLong中：高位为相对twepoch的毫秒数，低12位为序列号，通过CAS推进，不加锁
+ * 2.workerId/datacenterId可以在运行时重新分配(由redis租约分配)，两者合并为一个volatile字段，整体替换
+ * 3.时钟回拨不超过 maxBackwardMillis 时等待时钟追上，超过才拒绝生成
  */
 public class IdGenerateUtil {
-    private long workerId;
-    private long datacenterId;
-    private long sequence = 0L;
-    private long twepoch            = 1288834974657L;
-    private long workerIdBits       = 5L;
-    private long datacenterIdBits   = 5L;
-    private long maxWorkerId        = -1L ^ (-1L << workerIdBits);
-    private long maxDatacenterId    = -1L ^ (-1L << datacenterIdBits);
-    private long sequenceBits       = 12L;
-    private long workerIdShift      = sequenceBits;
-    private long datacenterIdShift  = sequenceBits + workerIdBits;
-    private long timestampLeftShift = sequenceBits + workerIdBits + datacenterIdBits;
-    private long sequenceMask       = -1L ^ (-1L << sequenceBits); //4095
-    private long lastTimestamp      = -1L;
+    /**
+     * workerId + datacenterId 共10位，可分配的节点编号总数
+     */
+    public static final int WORKER_SLOTS = 1 << 10;
+
+    private final long twepoch            = 1288834974657L;
+    private final long workerIdBits       = 5L;
+    private final long datacenterIdBits   = 5L;
+    private final long maxWorkerId        = -1L ^ (-1L << workerIdBits);
+    private final long maxDatacenterId    = -1L ^ (-1L << datacenterIdBits);
+    private final long sequenceBits       = 12L;
+    private final long workerIdShift      = sequenceBits;
+    private final long datacenterIdShift  = sequenceBits + workerIdBits;
+    private final long timestampLeftShift = sequenceBits + workerIdBits + datacenterIdBits;
+    private final long sequenceMask       = -1L ^ (-1L << sequenceBits); //4095
+    private final long maxBackwardMillis  = 5L;
+    //(上次时间戳 - twepoch) << sequenceBits | 序列号
+    private final AtomicLong state = new AtomicLong();
+    //datacenterId << datacenterIdShift | workerId << workerIdShift
+    private volatile long workerBits;
 
     private static class IdGenHolder {
         private static final IdGenerateUtil instance = new IdGenerateUtil();
@@ -32,42 +45,58 @@ public class IdGenerateUtil {
     }
 
     public IdGenerateUtil(long workerId, long datacenterId) {
+        this.assignWorker(workerId, datacenterId);
+    }
+
+    /**
+     * 重新分配节点编号，之后生成的id使用新的编号
+     */
+    public void assignWorker(long workerId, long datacenterId) {
         if (workerId > maxWorkerId || workerId < 0) {
             throw new IllegalArgumentException(String.format("worker Id can't be greater than %d or less than 0", maxWorkerId));
         }
         if (datacenterId > maxDatacenterId || datacenterId < 0) {
             throw new IllegalArgumentException(String.format("datacenter Id can't be greater than %d or less than 0", maxDatacenterId));
         }
-        this.workerId = workerId;
-        this.datacenterId = datacenterId;
+        this.workerBits = (datacenterId << datacenterIdShift) | (workerId << workerIdShift);
     }
 
-    public synchronized long nextId() {
-        long timestamp = timeGen();
-        if (timestamp < lastTimestamp) {
-            throw new RuntimeException(String.format(
-                    "Clock moved backwards.  Refusing to generate id for %d milliseconds", lastTimestamp - timestamp));
-        }
-        //如果上次生成时间和当前时间相同,在同一毫秒内
-        if (lastTimestamp == timestamp) {
-            sequence = (sequence + 1) & sequenceMask;
-            if (sequence == 0) {
-                timestamp = tilNextMillis(lastTimestamp);
-            }
-        } else {
-            sequence = 0L;
-        }
-        lastTimestamp = timestamp;
-        return ((timestamp - twepoch) << timestampLeftShift) | (datacenterId << datacenterIdShift)
-                | (workerId << workerIdShift) | sequence;
+    /**
+     * 按 0 ~ WORKER_SLOTS-1 的编号分配：高5位为datacenterId，低5位为workerId
+     */
+    public void assignWorker(int slot) {
+        this.assignWorker(slot & maxWorkerId, (slot >> workerIdBits) & maxDatacenterId);
     }
 
-    protected long tilNextMillis(long lastTimestamp) {
-        long timestamp = timeGen();
-        while (timestamp <= lastTimestamp) {
-            timestamp = timeGen();
+    public long nextId() {
+        for (;;) {
+            long current = state.get();
+            long lastTimestamp = current >>> sequenceBits;
+            long timestamp = timeGen() - twepoch;
+            long next;
+            if (timestamp > lastTimestamp) {
+                next = timestamp << sequenceBits;
+            } else if (timestamp == lastTimestamp) {
+                //同一毫秒内序列号用完，自旋到下一毫秒
+                if ((current & sequenceMask) == sequenceMask) {
+                    Thread.yield();
+                    continue;
+                }
+                next = current + 1;
+            } else {
+                long backward = lastTimestamp - timestamp;
+                if (backward > maxBackwardMillis) {
+                    throw new IllegalStateException(String.format(
+                            "Clock moved backwards.  Refusing to generate id for %d milliseconds", backward));
+                }
+                //小幅回拨：等待时钟追上上次的时间戳
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backward));
+                continue;
+            }
+            if (state.compareAndSet(current, next)) {
+                return ((next >>> sequenceBits) << timestampLeftShift) | workerBits | (next & sequenceMask);
+            }
         }
-        return timestamp;
     }
 
     protected long timeGen() {
@@ -75,4 +104,4 @@ public class IdGenerateUtil {
     }
 
 
-}
\ No newline at end of file
+}
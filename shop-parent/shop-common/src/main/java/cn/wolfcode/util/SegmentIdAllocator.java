@@ -0,0 +1,102 @@
+package cn.wolfcode.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 号段id分配器(双缓冲)
+ * 1.每次从全局计数器(MySQL/redis)申请一段id：(max - step, max]，本地通过原子自增发放，不访问IO，也不依赖时钟
+ * 2.当前号段剩余不足20%时异步预取下一段，用完后直接切换，正常情况下发号不会等待IO
+ * 3.计数器只增不减，同一节点发出的id单调递增，全局唯一，可以直接作为分表路由键
+ * 计数器初始值由数据源以雪花id播种，与历史上用雪花算法生成的编号不会重复
+ */
+public class SegmentIdAllocator {
+    private static final Segment EMPTY = new Segment(1, 0);
+
+    private final String bizTag;
+    private final int step;
+    private final SegmentSource source;
+    private final Executor executor;
+    private final AtomicReference<CompletableFuture<Segment>> next = new AtomicReference<>();
+    private volatile Segment current = EMPTY;
+
+    public SegmentIdAllocator(String bizTag, int step, SegmentSource source, Executor executor) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("segment step must be greater than 0: " + step);
+        }
+        this.bizTag = bizTag;
+        this.step = step;
+        this.source = source;
+        this.executor = executor;
+    }
+
+    public long nextId() {
+        for (;;) {
+            Segment segment = current;
+            long id = segment.cursor.getAndIncrement();
+            if (id <= segment.max) {
+                if ((segment.max - id) * 5 < step) {
+                    this.prefetch();
+                }
+                return id;
+            }
+            this.switchSegment(segment);
+        }
+    }
+
+    /**
+     * 当前号段用完：等待预取的号段(正常情况下已经完成)并切换，只有一个线程执行切换
+     */
+    private synchronized void switchSegment(Segment exhausted) {
+        if (current != exhausted) {
+            return;
+        }
+        this.prefetch();
+        CompletableFuture<Segment> future = next.get();
+        try {
+            current = future.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("failed to allocate id segment: " + bizTag, e.getCause());
+        } finally {
+            next.compareAndSet(future, null);
+        }
+    }
+
+    private void prefetch() {
+        CompletableFuture<Segment> future = new CompletableFuture<>();
+        if (!next.compareAndSet(null, future)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                long max = source.nextMax(bizTag, step);
+                future.complete(new Segment(max - step + 1, max));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * 全局计数器
+     */
+    public interface SegmentSource {
+        /**
+         * 计数器增加step，返回增加后的值
+         */
+        long nextMax(String bizTag, int step);
+    }
+
+    private static class Segment {
+        private final AtomicLong cursor;
+        private final long max;
+
+        Segment(long start, long max) {
+            this.cursor = new AtomicLong(start);
+            this.max = max;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package cn.wolfcode.util;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IdGenerateUtilTest {
+    private static final long TWEPOCH = 1288834974657L;
+    private static final long T = TWEPOCH + 1000000L;
+
+    @Test
+    public void sequenceRollsOverToNextMillisecond() {
+        //前5000次读时钟都停在T：4096个序列号用完后自旋，直到时钟前进
+        ScriptedClock generator = new ScriptedClock(0, 0);
+        for (int i = 0; i < 5000; i++) {
+            generator.times.add(T);
+        }
+        generator.times.add(T + 1);
+        long last = -1;
+        for (int seq = 0; seq < 4096; seq++) {
+            long id = generator.nextId();
+            assertEquals(T - TWEPOCH, timestampOf(id));
+            assertEquals(seq, sequenceOf(id));
+            assertTrue(id > last);
+            last = id;
+        }
+        long id = generator.nextId();
+        assertEquals(T + 1 - TWEPOCH, timestampOf(id));
+        assertEquals(0, sequenceOf(id));
+        assertTrue(id > last);
+    }
+
+    @Test
+    public void smallBackwardJumpWaitsForClock() {
+        ScriptedClock generator = new ScriptedClock(0, 0);
+        generator.times.addAll(Arrays.asList(T, T - 3, T));
+        long first = generator.nextId();
+        //回拨3ms：等待后重新读取时钟，继续在T内递增序列号
+        long second = generator.nextId();
+        assertEquals(T - TWEPOCH, timestampOf(second));
+        assertEquals(1, sequenceOf(second));
+        assertTrue(second > first);
+        assertTrue(generator.times.isEmpty());
+    }
+
+    @Test
+    public void largeBackwardJumpIsRefused() {
+        ScriptedClock generator = new ScriptedClock(0, 0);
+        generator.times.addAll(Arrays.asList(T, T - 100, T + 1));
+        generator.nextId();
+        try {
+            generator.nextId();
+            fail("clock moved backwards 100ms");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("100"));
+        }
+        //时钟恢复后继续生成
+        assertEquals(T + 1 - TWEPOCH, timestampOf(generator.nextId()));
+    }
+
+    @Test
+    public void workerSlotIsEncoded() {
+        ScriptedClock generator = new ScriptedClock(0, 0);
+        generator.times.addAll(Arrays.asList(T, T));
+        generator.assignWorker(IdGenerateUtil.WORKER_SLOTS - 1);
+        assertEquals(IdGenerateUtil.WORKER_SLOTS - 1, workerOf(generator.nextId()));
+        generator.assignWorker(5, 3);
+        assertEquals(3 << 5 | 5, workerOf(generator.nextId()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void workerIdOutOfRange() {
+        new IdGenerateUtil(32, 0);
+    }
+
+    @Test
+    public void concurrentIdsAreUnique() throws Exception {
+        IdGenerateUtil generator = new IdGenerateUtil(1, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    long[] ids = new long[50000];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+            Set<Long> all = new HashSet<>();
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get();
+                for (int i = 0; i < ids.length; i++) {
+                    //同一线程拿到的id单调递增
+                    assertTrue(i == 0 || ids[i] > ids[i - 1]);
+                    all.add(ids[i]);
+                }
+            }
+            assertEquals(400000, all.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long timestampOf(long id) {
+        return id >>> 22;
+    }
+
+    private static long workerOf(long id) {
+        return (id >>> 12) & (IdGenerateUtil.WORKER_SLOTS - 1);
+    }
+
+    private static long sequenceOf(long id) {
+        return id & 4095;
+    }
+
+    /**
+     * 按顺序返回预设的时间，用完后停在最后一个值
+     */
+    private static class ScriptedClock extends IdGenerateUtil {
+        private final Deque<Long> times = new ArrayDeque<>();
+        private long last;
+
+        ScriptedClock(long workerId, long datacenterId) {
+            super(workerId, datacenterId);
+        }
+
+        @Override
+        protected long timeGen() {
+            Long next = times.poll();
+            if (next != null) {
+                last = next;
+            }
+            return last;
+        }
+    }
+}
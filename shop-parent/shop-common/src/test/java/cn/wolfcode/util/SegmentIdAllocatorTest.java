@@ -0,0 +1,170 @@
+package cn.wolfcode.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentIdAllocatorTest {
+    private static final Executor DIRECT = Runnable::run;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stepMustBePositive() {
+        new SegmentIdAllocator("order", 0, (tag, step) -> step, DIRECT);
+    }
+
+    @Test
+    public void idsAreContiguousAcrossSegments() {
+        CountingSource source = new CountingSource(0);
+        SegmentIdAllocator allocator = new SegmentIdAllocator("order", 10, source, DIRECT);
+        for (long expected = 1; expected <= 35; expected++) {
+            assertEquals(expected, allocator.nextId());
+        }
+    }
+
+    @Test
+    public void nextSegmentIsPrefetchedBeforeSwitch() {
+        CountingSource source = new CountingSource(0);
+        SegmentIdAllocator allocator = new SegmentIdAllocator("order", 10, source, DIRECT);
+        //第一次发号同步申请第一个号段(1,10]
+        assertEquals(1, allocator.nextId());
+        assertEquals(1, source.calls.get());
+        for (long expected = 2; expected <= 8; expected++) {
+            assertEquals(expected, allocator.nextId());
+        }
+        assertEquals(1, source.calls.get());
+        //剩余不足20%：预取下一段，当前号段继续发号
+        assertEquals(9, allocator.nextId());
+        assertEquals(2, source.calls.get());
+        assertEquals(10, allocator.nextId());
+        assertEquals(2, source.calls.get());
+        //切换到预取好的号段，不再访问计数器
+        assertEquals(11, allocator.nextId());
+        assertEquals(2, source.calls.get());
+    }
+
+    @Test
+    public void switchWaitsForAsyncPrefetch() {
+        CountingSource source = new CountingSource(0);
+        List<Runnable> tasks = new ArrayList<>();
+        Executor deferred = tasks::add;
+        SegmentIdAllocator allocator = new SegmentIdAllocator("order", 10, source, r -> {
+            //第一个号段立即申请，之后的预取任务先挂起
+            if (source.calls.get() == 0) {
+                r.run();
+            } else {
+                deferred.execute(r);
+            }
+        });
+        for (long expected = 1; expected <= 9; expected++) {
+            assertEquals(expected, allocator.nextId());
+        }
+        assertEquals(1, tasks.size());
+        assertEquals(10, allocator.nextId());
+        //id 10 再次触发预取，已有进行中的预取，不重复提交
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals(11, allocator.nextId());
+        assertEquals(2, source.calls.get());
+    }
+
+    @Test
+    public void skipsSegmentsTakenByOtherNodes() {
+        AtomicLong counter = new AtomicLong();
+        SegmentIdAllocator.SegmentSource shared = (tag, step) -> counter.addAndGet(step);
+        SegmentIdAllocator a = new SegmentIdAllocator("order", 10, shared, DIRECT);
+        SegmentIdAllocator b = new SegmentIdAllocator("order", 10, shared, DIRECT);
+        assertEquals(1, a.nextId());
+        assertEquals(11, b.nextId());
+        for (int i = 0; i < 9; i++) {
+            a.nextId();
+        }
+        //a 的预取发生在 b 申请之后，拿到(20,30]
+        assertEquals(21, a.nextId());
+    }
+
+    @Test
+    public void failedFetchIsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        SegmentIdAllocator allocator = new SegmentIdAllocator("order", 10, (tag, step) -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("db down");
+            }
+            return 10;
+        }, DIRECT);
+        try {
+            allocator.nextId();
+            fail("first fetch should fail");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("order"));
+        }
+        assertEquals(1, allocator.nextId());
+    }
+
+    @Test
+    public void concurrentIdsAreUnique() throws Exception {
+        CountingSource source = new CountingSource(1000);
+        ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        SegmentIdAllocator allocator = new SegmentIdAllocator("order", 100, source, prefetcher);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<List<Long>>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                futures.add(callers.submit(() -> {
+                    start.await();
+                    List<Long> ids = new ArrayList<>(10000);
+                    for (int i = 0; i < 10000; i++) {
+                        ids.add(allocator.nextId());
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+            Set<Long> all = new HashSet<>();
+            for (Future<List<Long>> future : futures) {
+                List<Long> ids = future.get();
+                //同一线程拿到的id单调递增
+                for (int i = 1; i < ids.size(); i++) {
+                    assertTrue(ids.get(i) > ids.get(i - 1));
+                }
+                all.addAll(ids);
+            }
+            assertEquals(160000, all.size());
+            for (Long id : all) {
+                assertTrue(id > 1000 && id <= source.counter.get());
+            }
+        } finally {
+            callers.shutdownNow();
+            prefetcher.shutdownNow();
+        }
+    }
+
+    private static class CountingSource implements SegmentIdAllocator.SegmentSource {
+        private final AtomicLong counter;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        CountingSource(long initial) {
+            this.counter = new AtomicLong(initial);
+        }
+
+        @Override
+        public long nextMax(String bizTag, int step) {
+            calls.incrementAndGet();
+            return counter.addAndGet(step);
+        }
+    }
+}
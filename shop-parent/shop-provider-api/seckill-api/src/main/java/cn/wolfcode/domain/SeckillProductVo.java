@@ -19,4 +19,25 @@ public class SeckillProductVo extends SeckillProduct implements Serializable {
     private String productDetail;
     private BigDecimal productPrice;
     private Integer currentCount;
+
+    /**
+     * 浅拷贝，字段通过setter显式复制(热点路径上不使用BeanUtils反射)
+     */
+    public SeckillProductVo copy() {
+        SeckillProductVo vo = new SeckillProductVo();
+        vo.setId(this.getId());
+        vo.setProductId(this.getProductId());
+        vo.setSeckillPrice(this.getSeckillPrice());
+        vo.setIntergral(this.getIntergral());
+        vo.setStockCount(this.getStockCount());
+        vo.setStartDate(this.getStartDate());
+        vo.setTime(this.getTime());
+        vo.setProductName(productName);
+        vo.setProductTitle(productTitle);
+        vo.setProductImg(productImg);
+        vo.setProductDetail(productDetail);
+        vo.setProductPrice(productPrice);
+        vo.setCurrentCount(currentCount);
+        return vo;
+    }
 }
@@ -0,0 +1,22 @@
+package cn.wolfcode.mq;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * 本地缓存失效广播消息
+ * key为空时清空整个缓存
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEvictMessage implements Serializable {
+    private String cacheName;//缓存名称
+    private String key;//缓存key
+    private String nodeId;//发送节点，发送节点自身已失效，收到后忽略
+}
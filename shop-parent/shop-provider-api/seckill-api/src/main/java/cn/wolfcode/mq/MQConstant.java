@@ -8,12 +8,26 @@ public class MQConstant {
     //订单结果
     public static final String ORDER_RESULT_TOPIC = "ORDER_RESULT_TOPIC";
     public static final String ORDER_RESULT_CONSUMER_GROUP = "ORDER_RESULT_CONSUMER_GROUP";
+    //订单结果长轮询(广播到每个秒杀节点)
+    public static final String ORDER_RESULT_POLL_CONSUMER_GROUP = "ORDER_RESULT_POLL_CONSUMER_GROUP";
+    //订单结果转发到客户端连接所在的websocket节点(tag为节点id)
+    public static final String ORDER_RESULT_FORWARD_TOPIC = "ORDER_RESULT_FORWARD_TOPIC";
+    public static final String ORDER_RESULT_FORWARD_CONSUMER_GROUP = "ORDER_RESULT_FORWARD_CONSUMER_GROUP";
     //订单超时取消
     public static final String ORDER_PAY_TIMEOUT_TOPIC = "ORDER_PAY_TIMEOUT_TOPIC";
     public static final String ORDER_PAY_TIMEOUT_CONSUMER_GROUP = "ORDER_PAY_TIMEOUT_CONSUMER_GROUP";
     //取消本地标识
     public static final String CANCEL_SECKILL_OVER_SIGE_TOPIC = "CANCEL_SECKILL_OVER_SIGE_TOPIC";
     public static final String CANCEL_SECKILL_OVER_SIGE_CONSUMER_GROUP = "CANCEL_SECKILL_OVER_SIGE_CONSUMER_GROUP";
+    //商品售罄标识
+    public static final String SECKILL_SOLD_OUT_TOPIC = "SECKILL_SOLD_OUT_TOPIC";
+    public static final String SECKILL_SOLD_OUT_CONSUMER_GROUP = "SECKILL_SOLD_OUT_CONSUMER_GROUP";
+    //实时库存推送
+    public static final String SECKILL_STOCK_PUSH_TOPIC = "SECKILL_STOCK_PUSH_TOPIC";
+    public static final String SECKILL_STOCK_PUSH_CONSUMER_GROUP = "SECKILL_STOCK_PUSH_CONSUMER_GROUP";
+    //本地缓存失效广播
+    public static final String CACHE_EVICT_TOPIC = "CACHE_EVICT_TOPIC";
+    public static final String CACHE_EVICT_CONSUMER_GROUP = "CACHE_EVICT_CONSUMER_GROUP";
     //订单创建成功Tag
     public static final String ORDER_RESULT_SUCCESS_TAG = "SUCCESS";
     //订单创建成失败Tag
@@ -27,4 +27,5 @@ public class OrderMessage implements Serializable {
     private String token;//用户的token信息
     private Long userPhone;//用户手机号码
     private String orderNo;
+    private Integer stockShard;//预减库存的分片
 }
@@ -0,0 +1,25 @@
+package cn.wolfcode.mq;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 售罄/取消售罄广播消息
+ * version 由redis全局递增生成，节点只接受比本地更新的版本，避免过期的取消消息覆盖新的售罄标识
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SoldOutMessage implements Serializable {
+    private Long seckillId;//秒杀商品ID
+    private Long version;//标识版本号
+    private Boolean soldOut;//true:售罄 false:取消售罄
+    private Long userPhone;//取消售罄时携带，各节点清除该用户的本地下单标识，可为空
+    private List<Long> userPhones;//批量取消时携带同一商品的多个用户，可为空
+}
@@ -0,0 +1,31 @@
+package cn.wolfcode.mq;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 实时库存推送消息：一个场次内库存有变化的商品
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockPushMessage implements Serializable {
+    private Integer time;//秒杀场次
+    private List<StockItem> items;
+
+    @Setter
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StockItem implements Serializable {
+        private Long seckillId;//秒杀商品ID
+        private Integer currentCount;//剩余库存
+        private Boolean soldOut;//是否售罄
+    }
+}
@@ -12,7 +12,15 @@ public enum SeckillRedisKey {
     SECKILL_PRODUCT_LIST("today:seckill:products:"),
     SECKILL_ORDER_HASH("seckillOrderHash:"),
     SECKILL_STOCK_COUNT_HASH("seckillStockCount:"),
-    SECKILL_REAL_COUNT_HASH("seckillRealCount:");
+    SECKILL_STOCK_SHARD_HASH("seckillStockShards:"),
+    SECKILL_STOCK_COMPENSATION_HASH("seckillStockCompensation:"),
+    SECKILL_REAL_COUNT_HASH("seckillRealCount:"),
+    SECKILL_STOCK_OVER_VERSION_HASH("seckillStockOverVersion"),
+    SECKILL_PAY_TIMEOUT_ZSET("seckillPayTimeout"),
+    SECKILL_ORDER_STATE_HASH("seckillOrderState:"),
+    SECKILL_STOCK_RECONCILE_LOCK("seckillStockReconcileLock"),
+    SECKILL_WORKER_ID_LEASE("seckillWorkerId:"),
+    SECKILL_ID_SEGMENT("seckillIdSegment:");
 
     SeckillRedisKey(String prefix, TimeUnit unit, int expireTime) {
         this.prefix = prefix;
@@ -28,6 +36,22 @@ public enum SeckillRedisKey {
         return this.prefix + key;
     }
 
+    /**
+     * 拼接带hash tag的key，例如 today:seckill:products:{10}
+     * 同一个tag的key落在同一个slot，可以在集群模式下RENAME
+     */
+    public String joinTag(String key) {
+        return this.prefix + "{" + key + "}";
+    }
+
+    /**
+     * 拼接分片key，例如 seckillStockCount:{10:1}
+     * hash tag 保证同一分片的库存与用户下单标识落在同一个slot，不同分片分散到不同slot
+     */
+    public String joinShard(String key, int shard) {
+        return this.prefix + "{" + key + ":" + shard + "}";
+    }
+
     private String prefix;
     private TimeUnit unit;
     private int expireTime;
@@ -1,8 +1,15 @@
 package cn.wolfcode.config;
 
+import cn.wolfcode.mapper.IdSegmentMapper;
 import cn.wolfcode.util.IdGenerateUtil;
+import cn.wolfcode.util.SegmentIdAllocator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class AppConfig {
@@ -11,4 +18,20 @@ public class AppConfig {
     public IdGenerateUtil idGenerateUtil(){
         return new IdGenerateUtil(0,1);
     }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService segmentPrefetchExecutor(){
+        return Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * 交易流水号号段分配器：TCC事务记录与账户流水共用，号段从MySQL计数器申请
+     */
+    @Bean
+    public SegmentIdAllocator tradeNoAllocator(IdSegmentMapper idSegmentMapper, TransactionTemplate transactionTemplate,
+                                               ExecutorService segmentPrefetchExecutor,
+                                               @Value("${intergral.id.segment.step:1000}") int step){
+        MysqlSegmentSource source = new MysqlSegmentSource(idSegmentMapper, transactionTemplate, idGenerateUtil());
+        return new SegmentIdAllocator("tradeNo", step, source, segmentPrefetchExecutor);
+    }
 }
@@ -0,0 +1,40 @@
+package cn.wolfcode.config;
+
+import cn.wolfcode.mapper.IdSegmentMapper;
+import cn.wolfcode.util.IdGenerateUtil;
+import cn.wolfcode.util.SegmentIdAllocator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 号段计数器(MySQL)：t_id_segment 中每个bizTag一行
+ * 1.update max_id = max_id + step 与 select 在同一个事务中执行，行锁保证多个节点申请到的号段不重叠
+ * 2.计数器不存在时以当前雪花id播种，与历史上用雪花算法生成的流水号不会重复
+ * 建表脚本：resources/sql/t_id_segment.sql
+ */
+public class MysqlSegmentSource implements SegmentIdAllocator.SegmentSource {
+
+    private final IdSegmentMapper idSegmentMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final IdGenerateUtil idGenerateUtil;
+
+    public MysqlSegmentSource(IdSegmentMapper idSegmentMapper, TransactionTemplate transactionTemplate, IdGenerateUtil idGenerateUtil) {
+        this.idSegmentMapper = idSegmentMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.idGenerateUtil = idGenerateUtil;
+    }
+
+    @Override
+    public long nextMax(String bizTag, int step) {
+        Long max = transactionTemplate.execute(status -> {
+            if (idSegmentMapper.increase(bizTag, step) == 0) {
+                idSegmentMapper.insertIgnore(bizTag, idGenerateUtil.nextId());
+                idSegmentMapper.increase(bizTag, step);
+            }
+            return idSegmentMapper.selectMaxId(bizTag);
+        });
+        if (max == null) {
+            throw new IllegalStateException("id segment not found: " + bizTag);
+        }
+        return max;
+    }
+}
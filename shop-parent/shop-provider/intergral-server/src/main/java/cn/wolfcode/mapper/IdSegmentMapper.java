@@ -0,0 +1,29 @@
+package cn.wolfcode.mapper;
+
+import org.apache.ibatis.annotations.Param;
+
+
+public interface IdSegmentMapper {
+    /**
+     * 计数器不存在时以初始值插入
+     * @param bizTag
+     * @param maxId
+     * @return
+     */
+    int insertIgnore(@Param("bizTag") String bizTag, @Param("maxId") long maxId);
+
+    /**
+     * 计数器增加step
+     * @param bizTag
+     * @param step
+     * @return
+     */
+    int increase(@Param("bizTag") String bizTag, @Param("step") int step);
+
+    /**
+     * 查询计数器当前值
+     * @param bizTag
+     * @return
+     */
+    Long selectMaxId(@Param("bizTag") String bizTag);
+}
@@ -9,7 +9,7 @@ import cn.wolfcode.mapper.AccountLogMapper;
 import cn.wolfcode.mapper.AccountTransactionMapper;
 import cn.wolfcode.mapper.UsableIntegralMapper;
 import cn.wolfcode.service.IUsableIntegralService;
-import cn.wolfcode.util.IdGenerateUtil;
+import cn.wolfcode.util.SegmentIdAllocator;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import io.seata.rm.tcc.api.BusinessActionContext;
@@ -26,13 +26,13 @@ public class UsableIntegralServiceImpl implements IUsableIntegralService {
     private final UsableIntegralMapper usableIntegralMapper;
     private final AccountTransactionMapper accountTransactionMapper;
     private final AccountLogMapper accountLogMapper;
-    private final IdGenerateUtil idGenerateUtil;
+    private final SegmentIdAllocator tradeNoAllocator;
 
-    public UsableIntegralServiceImpl(UsableIntegralMapper usableIntegralMapper, AccountTransactionMapper accountTransactionMapper, AccountLogMapper accountLogMapper, IdGenerateUtil idGenerateUtil) {
+    public UsableIntegralServiceImpl(UsableIntegralMapper usableIntegralMapper, AccountTransactionMapper accountTransactionMapper, AccountLogMapper accountLogMapper, SegmentIdAllocator tradeNoAllocator) {
         this.usableIntegralMapper = usableIntegralMapper;
         this.accountTransactionMapper = accountTransactionMapper;
         this.accountLogMapper = accountLogMapper;
-        this.idGenerateUtil = idGenerateUtil;
+        this.tradeNoAllocator = tradeNoAllocator;
     }
 
     @Transactional(rollbackFor = Exception.class)
@@ -40,7 +40,7 @@ public class UsableIntegralServiceImpl implements IUsableIntegralService {
     public String tryPayment(OperateIntergralVo operateIntergralVo, BusinessActionContext ctx) {
         log.info(" [TCC-Try]收到请求参数: {}，准备执行tryPayment ", JSON.toJSONString(operateIntergralVo));
         //1.实现防悬挂，直接向MySQL插入事务控制记录
-        String tradeNo = idGenerateUtil.nextId() + "";
+        String tradeNo = tradeNoAllocator.nextId() + "";
         this.insertTxLog(operateIntergralVo, ctx,AccountLog.TYPE_DECR,AccountTransaction.STATE_TRY,tradeNo);
         //2.冻结积分 判断是否冻结成功
         int row = usableIntegralMapper.freezeIntergral(operateIntergralVo.getUserId(), operateIntergralVo.getValue());
@@ -169,7 +169,7 @@ public class UsableIntegralServiceImpl implements IUsableIntegralService {
         log.setGmtTime(new Date());
         log.setOutTradeNo(vo.getOutTradeNo());
         log.setUserId(vo.getUserId());
-        log.setTradeNo(idGenerateUtil.nextId()+"");
+        log.setTradeNo(tradeNoAllocator.nextId()+"");
         log.setType(AccountLog.TYPE_DECR);
         accountLogMapper.insert(log);
         return log.getOutTradeNo();
@@ -193,7 +193,7 @@ public class UsableIntegralServiceImpl implements IUsableIntegralService {
         incrLog.setInfo(refundVo.getRefundReason());
         incrLog.setType(AccountLog.TYPE_INCR);
         incrLog.setAmount(bigDecimal.longValue());
-        incrLog.setTradeNo(idGenerateUtil.nextId()+"");
+        incrLog.setTradeNo(tradeNoAllocator.nextId()+"");
         incrLog.setOutTradeNo(refundVo.getOutTradeNo());
         incrLog.setUserId(decrLog.getUserId());
         incrLog.setGmtTime(new Date());
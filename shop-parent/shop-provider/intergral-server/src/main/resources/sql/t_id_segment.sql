@@ -0,0 +1,7 @@
+-- 号段计数器：每个bizTag一行，max_id为已分配出去的最大id
+CREATE TABLE IF NOT EXISTS `t_id_segment` (
+  `biz_tag` varchar(64) NOT NULL COMMENT '业务标识',
+  `max_id` bigint NOT NULL COMMENT '已分配的最大id',
+  `gmt_modified` datetime NOT NULL COMMENT '最后修改时间',
+  PRIMARY KEY (`biz_tag`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
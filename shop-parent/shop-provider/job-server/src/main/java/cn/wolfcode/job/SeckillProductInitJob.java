@@ -13,10 +13,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 每天凌晨 00:00 执行
@@ -37,6 +42,10 @@ public class SeckillProductInitJob implements SimpleJob {
     private String shardingParameters;
     @Value("${job.seckillProduct.dataFlow}")
     private boolean dataFlow;
+    @Value("${job.seckillProduct.stockShards:1}")
+    private Integer stockShards;
+    @Value("${job.seckillProduct.pushBatchSize:500}")
+    private int batchSize;
 
     private final SeckillProductFeignApi seckillProductFeignApi;
     private final StringRedisTemplate stringRedisTemplate;
@@ -51,30 +60,69 @@ public class SeckillProductInitJob implements SimpleJob {
         // 分片参数利用场次进行分片
         String time = shardingContext.getShardingParameter();//
 
-        // 先清空之前的数据
-        String key = SeckillRedisKey.SECKILL_PRODUCT_LIST.join(time);
-        stringRedisTemplate.delete(key);//删除前一天的数据，这个key只有天数信息没有场次信息
+        // 新数据先写入临时key，写完后RENAME覆盖旧数据，读取方不会看到空列表或不完整的列表
+        String key = SeckillRedisKey.SECKILL_PRODUCT_LIST.joinTag(time);
+        String stagingKey = key + ":staging";
 
         // 调用秒杀服务的接口, 查询秒杀商品数据
         Result<List<SeckillProductVo>> result = seckillProductFeignApi.selectTodayListByTime(Integer.valueOf(time));
         if (result.hasError() || result.getData() == null) {
             log.warn("[秒杀商品数据预热] 查询秒杀商品数据失败, 远程服务异常. res={}", JSON.toJSONString(result));
+            stringRedisTemplate.delete(key);//删除前一天的数据，这个key只有天数信息没有场次信息
             return;
         }
 
         List<SeckillProductVo> productVoList = result.getData();
         log.info("[秒杀商品数据预热] 准备开始预热秒杀商品数据, 当前场次:{}, 本次缓存的数据:{}", time, productVoList.size());
+        if (productVoList.isEmpty()) {
+            stringRedisTemplate.delete(key);
+            return;
+        }
+
+        // 库存先于商品列表写入，读取方看到商品时库存已经就绪
+        //库存预热 8.22
+        this.initStockShards(time, productVoList);
 
         // 将数据存入 Redis : List
-        // key=TODAY:{time}:SECKILL:PRODUCTS
+        // key=today:seckill:products:{time}
         // value=SeckillProductVo => {json}
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.del(stagingKey);
+            for (int from = 0; from < productVoList.size(); from += batchSize) {
+                List<SeckillProductVo> batch = productVoList.subList(from, Math.min(from + batchSize, productVoList.size()));
+                conn.rPush(stagingKey, batch.stream().map(JSON::toJSONString).toArray(String[]::new));
+            }
+            conn.rename(stagingKey, key);
+            return null;
+        });
+        log.info("[秒杀商品数据预热] 数据预热完成...");
+    }
+
+    /**
+     * 库存分片预热：把商品库存平均拆分到N个分片hash中 seckillStockCount:{time:shard}
+     * 不同分片通过hash tag分散到不同slot，热门商品的扣减不再集中在一个redis节点
+     * 分片数不超过库存数，保证每个分片至少有一件库存
+     * 先按分片key汇总，一次管道中每个hash只执行一次HMSET
+     */
+    private void initStockShards(String time, List<SeckillProductVo> productVoList) {
+        Map<String, Map<String, String>> shardStocks = new LinkedHashMap<>();
+        Map<String, String> shardCounts = new HashMap<>(productVoList.size() * 2);
         for (SeckillProductVo vo : productVoList) {
-            String json = JSON.toJSONString(vo);
-            stringRedisTemplate.opsForList().rightPush(key, json);
-            //库存预热 8.22
-            String hashKey = SeckillRedisKey.SECKILL_STOCK_COUNT_HASH.join(time + "");
-            stringRedisTemplate.opsForHash().put(hashKey,vo.getId()+"",vo.getStockCount()+"");
+            int stockCount = vo.getStockCount() == null ? 0 : vo.getStockCount();
+            int shardCount = Math.max(1, Math.min(stockShards, stockCount));
+            for (int shard = 0; shard < shardCount; shard++) {
+                int count = stockCount / shardCount + (shard < stockCount % shardCount ? 1 : 0);
+                String hashKey = SeckillRedisKey.SECKILL_STOCK_COUNT_HASH.joinShard(time, shard);
+                shardStocks.computeIfAbsent(hashKey, k -> new HashMap<>()).put(vo.getId() + "", count + "");
+            }
+            shardCounts.put(vo.getId() + "", shardCount + "");
         }
-        log.info("[秒杀商品数据预热] 数据预热完成...");
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            shardStocks.forEach(conn::hMSet);
+            conn.hMSet(SeckillRedisKey.SECKILL_STOCK_SHARD_HASH.join(time), shardCounts);
+            return null;
+        });
     }
 }
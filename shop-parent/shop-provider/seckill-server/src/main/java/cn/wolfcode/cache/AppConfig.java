@@ -1,8 +1,12 @@
 package cn.wolfcode.cache;
 
 
+import cn.wolfcode.core.RedisSegmentSource;
+import cn.wolfcode.util.SegmentIdAllocator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -17,4 +21,13 @@ public class AppConfig {
         return new ScheduledThreadPoolExecutor(10);
     }
 
+    /**
+     * 订单号号段分配器：号段从redis计数器申请，在共享调度线程池中异步预取
+     */
+    @Bean
+    public SegmentIdAllocator orderIdAllocator(StringRedisTemplate redisTemplate, ScheduledExecutorService scheduledExecutorService,
+                                               @Value("${seckill.id.segment.step:1000}") int step){
+        return new SegmentIdAllocator("orderNo", step, new RedisSegmentSource(redisTemplate), scheduledExecutorService);
+    }
+
 }
@@ -3,7 +3,8 @@ package cn.wolfcode.cache;
 import com.alibaba.fastjson.support.spring.GenericFastJsonRedisSerializer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.CacheManager;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -18,6 +19,8 @@ import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.Set;
 
 @Slf4j
 @Configuration
@@ -25,9 +28,25 @@ public class CacheConfig {
 
     @Autowired
     private RedisConnectionFactory redisConnectionFactory;
+    @Autowired
+    private RocketMQTemplate rocketMQTemplate;
+
+    @Value("${seckill.cache.local.names:SeckillProduct}")
+    private Set<String> localCacheNames;
+    @Value("${seckill.cache.local.maximum-size:10000}")
+    private long localMaximumSize;
+    @Value("${seckill.cache.local.expire-seconds:60}")
+    private long localExpireSeconds;
 
+    /**
+     * 二级缓存：本地caffeine + redis，只有seckill.cache.local.names中的缓存开启本地缓存
+     */
     @Bean
-    public CacheManager cacheManager() {
+    public TwoLevelCacheManager cacheManager() {
+        return new TwoLevelCacheManager(redisCacheManager(), rocketMQTemplate, localCacheNames, localMaximumSize, localExpireSeconds);
+    }
+
+    private RedisCacheManager redisCacheManager() {
         //缓存配置对象
         RedisCacheConfiguration redisCacheConfiguration = RedisCacheConfiguration.defaultCacheConfig();
 
@@ -36,9 +55,11 @@ public class CacheConfig {
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(keySerializer()))         //设置key序列化器
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer((valueSerializer())));  //设置value序列化器
 
-        return RedisCacheManager
+        RedisCacheManager redisCacheManager = RedisCacheManager
                 .builder(RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory))
                 .cacheDefaults(redisCacheConfiguration).build();
+        redisCacheManager.afterPropertiesSet();
+        return redisCacheManager;
     }
     @Bean
     public RedisScript<Boolean> redisScript(){
@@ -48,6 +69,83 @@ public class CacheConfig {
         return script;
     }
 
+    /**
+     * 秒杀准入脚本：重复下单校验+库存预减+用户下单标识 一次往返原子完成
+     */
+    @Bean
+    public RedisScript<Long> seckillAdmissionScript(){
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/seckill_admission.lua"));
+        return script;
+    }
+
+    /**
+     * 本地库存分配：从redis批量租借库存
+     */
+    @Bean
+    public RedisScript<Long> stockLeaseScript(){
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/stock_lease.lua"));
+        return script;
+    }
+
+    /**
+     * 库存补偿：按订单号幂等回补库存
+     */
+    @Bean
+    public RedisScript<Long> stockCompensateScript(){
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/stock_compensate.lua"));
+        return script;
+    }
+
+    /**
+     * 订单状态缓存：按状态机顺序比较后写入，状态不会回退
+     */
+    @Bean
+    public RedisScript<Long> orderStateCasScript(){
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/order_state_cas.lua"));
+        return script;
+    }
+
+    /**
+     * 支付超时：从超时集合中认领订单，保证同一订单只被一个节点取消
+     */
+    @Bean
+    public RedisScript<List> payTimeoutClaimScript(){
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setResultType(List.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/pay_timeout_claim.lua"));
+        return script;
+    }
+
+    /**
+     * id生成器节点编号租约：只有持有者才能续期/释放
+     */
+    @Bean
+    public RedisScript<Long> workerIdLeaseScript(){
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/worker_id_lease.lua"));
+        return script;
+    }
+
+    /**
+     * 支付超时：登记订单的支付截止时间，已登记的订单不覆盖(ZADD NX)
+     */
+    @Bean
+    public RedisScript<Long> payTimeoutRegisterScript(){
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/pay_timeout_register.lua"));
+        return script;
+    }
+
     private RedisSerializer<String> keySerializer() {
         return new StringRedisSerializer();
     }
@@ -0,0 +1,42 @@
+package cn.wolfcode.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 二级缓存命中统计
+ * l1Hits：本地缓存命中，l2Hits：redis命中，misses：都未命中(回源)
+ */
+public class CacheStats {
+    private final LongAdder l1Hits = new LongAdder();
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    void l1Hit() {
+        l1Hits.increment();
+    }
+
+    void l2Hit() {
+        l2Hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    public Map<String, Object> snapshot() {
+        long l1 = l1Hits.sum();
+        long l2 = l2Hits.sum();
+        long miss = misses.sum();
+        long total = l1 + l2 + miss;
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("l1Hits", l1);
+        map.put("l2Hits", l2);
+        map.put("misses", miss);
+        map.put("requests", total);
+        //请求中完全没有离开JVM的比例
+        map.put("l1HitRate", total == 0 ? 0D : (double) l1 / total);
+        return map;
+    }
+}
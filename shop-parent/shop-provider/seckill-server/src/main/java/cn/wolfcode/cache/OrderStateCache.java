@@ -0,0 +1,112 @@
+package cn.wolfcode.cache;
+
+import cn.wolfcode.domain.OrderInfo;
+import cn.wolfcode.redis.SeckillRedisKey;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单状态缓存(write-through)
+ * 1.seckillOrderState:orderNo => {v:状态序号, s:状态, d:订单json}，订单每次状态变化都写入
+ * 2.写入通过脚本比较状态序号：未支付 < 已支付/取消/超时 < 已退款，只允许前进，乱序到达的旧状态不会覆盖新状态
+ * 3.在事务中变化的状态在提交后才写入，回滚的变化不会进入缓存
+ * 4.未命中时由调用方查询MySQL后回填，回填同样经过序号比较
+ */
+@Slf4j
+@Component
+public class OrderStateCache {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<Long> orderStateCasScript;
+
+    @Value("${seckill.order.state.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    public OrderStateCache(StringRedisTemplate redisTemplate, RedisScript<Long> orderStateCasScript) {
+        this.redisTemplate = redisTemplate;
+        this.orderStateCasScript = orderStateCasScript;
+    }
+
+    public OrderInfo get(String orderNo) {
+        Object data = redisTemplate.opsForHash().get(SeckillRedisKey.SECKILL_ORDER_STATE_HASH.join(orderNo), "d");
+        return data == null ? null : JSON.parseObject(data.toString(), OrderInfo.class);
+    }
+
+    /**
+     * 写入订单状态，当前事务提交后才生效(没有事务时立即写入)
+     */
+    public void put(OrderInfo orderInfo) {
+        this.putAll(Collections.singletonList(orderInfo));
+    }
+
+    public void putAll(List<OrderInfo> orderInfos) {
+        if (orderInfos.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    OrderStateCache.this.write(orderInfos);
+                }
+            });
+            return;
+        }
+        this.write(orderInfos);
+    }
+
+    private void write(List<OrderInfo> orderInfos) {
+        String ttl = TimeUnit.MINUTES.toSeconds(ttlMinutes) + "";
+        try {
+            if (orderInfos.size() == 1) {
+                OrderInfo orderInfo = orderInfos.get(0);
+                redisTemplate.execute(orderStateCasScript,
+                        Collections.singletonList(SeckillRedisKey.SECKILL_ORDER_STATE_HASH.join(orderInfo.getOrderNo())),
+                        rank(orderInfo.getStatus()) + "", orderInfo.getStatus() + "", JSON.toJSONString(orderInfo), ttl);
+                return;
+            }
+            //批量写入一次pipeline发送
+            String script = orderStateCasScript.getScriptAsString();
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (OrderInfo orderInfo : orderInfos) {
+                    conn.eval(script, ReturnType.INTEGER, 1, SeckillRedisKey.SECKILL_ORDER_STATE_HASH.join(orderInfo.getOrderNo()),
+                            rank(orderInfo.getStatus()) + "", orderInfo.getStatus() + "", JSON.toJSONString(orderInfo), ttl);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            //缓存写入失败时删除，下一次读取从MySQL回填
+            log.warn("[订单状态缓存] 写入失败, 删除缓存 count={}", orderInfos.size(), e);
+            for (OrderInfo orderInfo : orderInfos) {
+                redisTemplate.delete(SeckillRedisKey.SECKILL_ORDER_STATE_HASH.join(orderInfo.getOrderNo()));
+            }
+        }
+    }
+
+    /**
+     * 状态在状态机中的序号：已支付与取消/超时互斥，序号相同
+     */
+    private static int rank(Integer status) {
+        if (OrderInfo.STATUS_ARREARAGE.equals(status)) {
+            return 1;
+        }
+        if (OrderInfo.STATUS_REFUND.equals(status)) {
+            return 3;
+        }
+        return 2;
+    }
+}
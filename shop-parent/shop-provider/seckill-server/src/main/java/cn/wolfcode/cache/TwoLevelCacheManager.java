@@ -0,0 +1,87 @@
+package cn.wolfcode.cache;
+
+import cn.wolfcode.mq.CacheEvictMessage;
+import cn.wolfcode.mq.DefaultSendCallback;
+import cn.wolfcode.mq.MQConstant;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二级缓存管理器
+ * 只有配置了本地缓存的缓存名称才包装为TwoLevelCache，其余直接使用redis缓存
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final CacheManager remoteCacheManager;
+    private final RocketMQTemplate rocketMQTemplate;
+    private final Set<String> localCacheNames;
+    private final long maximumSize;
+    private final long expireSeconds;
+    //当前节点标识，忽略自己发出的失效广播
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager remoteCacheManager, RocketMQTemplate rocketMQTemplate, Set<String> localCacheNames, long maximumSize, long expireSeconds) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.rocketMQTemplate = rocketMQTemplate;
+        this.localCacheNames = localCacheNames;
+        this.maximumSize = maximumSize;
+        this.expireSeconds = expireSeconds;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache remote = remoteCacheManager.getCache(name);
+        if (remote == null || !localCacheNames.contains(name)) {
+            return remote;
+        }
+        return caches.computeIfAbsent(name, n -> new TwoLevelCache(n,
+                Caffeine.newBuilder()
+                        .maximumSize(maximumSize)
+                        .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                        .build(),
+                remote, this));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remoteCacheManager.getCacheNames();
+    }
+
+    void publishEvict(String cacheName, String key) {
+        rocketMQTemplate.asyncSend(MQConstant.CACHE_EVICT_TOPIC, new CacheEvictMessage(cacheName, key, nodeId),
+                new DefaultSendCallback("本地缓存失效"));
+    }
+
+    /**
+     * 处理失效广播
+     */
+    public void onEvict(CacheEvictMessage message) {
+        if (nodeId.equals(message.getNodeId())) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(message.getCacheName());
+        if (cache != null) {
+            cache.evictLocal(message.getKey());
+        }
+    }
+
+    /**
+     * 各二级缓存的命中统计
+     */
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> map = new LinkedHashMap<>();
+        caches.forEach((name, cache) -> map.put(name, cache.getStats().snapshot()));
+        return map;
+    }
+}
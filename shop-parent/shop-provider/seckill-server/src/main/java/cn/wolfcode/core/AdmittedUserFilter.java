@@ -0,0 +1,163 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.redis.SeckillRedisKey;
+import cn.wolfcode.util.ConcurrentLongLongMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地已下单用户过滤器
+ * 1.记录当前节点上已经准入过的用户(seckillId => phone)，同一用户重复点击直接在本地拒绝，不再访问redis
+ * 2.只缓存redis中确定存在的用户下单标识，没有误判；本地未命中时仍以redis准入脚本为准
+ * 3.启动时从redis的用户下单标识重建，失败回滚/退款通过广播消息清除
+ *   集群模式下逐个主节点scan；重建期间收到的清除在重建完成后再执行一次，避免重建把已经清除的用户加回来
+ */
+@Slf4j
+@Component
+public class AdmittedUserFilter {
+    private static final long IDLE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final Map<Long, Filter> filters = new ConcurrentHashMap<>();
+    //重建期间收到的清除：seckillId => phones，由this锁保护
+    private final Map<Long, Set<Long>> removedDuringRebuild = new HashMap<>();
+    private boolean rebuilding = true;
+
+    public AdmittedUserFilter(StringRedisTemplate redisTemplate, ScheduledExecutorService scheduledExecutorService) {
+        this.redisTemplate = redisTemplate;
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    public boolean contains(Long seckillId, Long phone) {
+        Filter filter = filters.get(seckillId);
+        return filter != null && filter.phones.containsKey(phone);
+    }
+
+    public void add(Long seckillId, Long phone) {
+        Filter filter = filters.computeIfAbsent(seckillId, id -> new Filter());
+        filter.phones.put(phone, 1L);
+        filter.lastWrite = System.currentTimeMillis();
+    }
+
+    public void remove(Long seckillId, Long phone) {
+        synchronized (this) {
+            if (rebuilding) {
+                removedDuringRebuild.computeIfAbsent(seckillId, id -> new HashSet<>()).add(phone);
+            }
+        }
+        Filter filter = filters.get(seckillId);
+        if (filter != null) {
+            filter.phones.remove(phone);
+        }
+    }
+
+    /**
+     * 启动后异步重建，并定时清理一天内没有写入的商品
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        scheduledExecutorService.execute(this::rebuild);
+        scheduledExecutorService.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.HOURS);
+    }
+
+    private void rebuild() {
+        //用户下单标识：seckillOrderHash:{time:shard}:seckillId => {phone:1}
+        String pattern = SeckillRedisKey.SECKILL_ORDER_HASH.join("*");
+        ScanOptions keyOptions = ScanOptions.scanOptions().match(pattern).count(1000).build();
+        List<String> keys = new ArrayList<>();
+        try {
+            redisTemplate.execute(connection -> {
+                if (connection instanceof RedisClusterConnection) {
+                    //集群模式下scan只会遍历一个节点，需要逐个主节点scan
+                    RedisClusterConnection clusterConnection = (RedisClusterConnection) connection;
+                    for (RedisClusterNode node : clusterConnection.clusterGetNodes()) {
+                        if (node.isMaster()) {
+                            this.scanKeys(clusterConnection.scan(node, keyOptions), keys);
+                        }
+                    }
+                } else {
+                    this.scanKeys(connection.scan(keyOptions), keys);
+                }
+                return null;
+            }, true);
+            int count = 0;
+            for (String key : keys) {
+                String suffix = key.substring(key.lastIndexOf(':') + 1);
+                if (!suffix.matches("\\d+")) {
+                    continue;
+                }
+                Long seckillId = Long.valueOf(suffix);
+                try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash()
+                        .scan(key, ScanOptions.scanOptions().count(1000).build())) {
+                    while (cursor.hasNext()) {
+                        this.add(seckillId, Long.valueOf(cursor.next().getKey().toString()));
+                        count++;
+                    }
+                }
+            }
+            log.info("[下单用户过滤] 从redis重建完成, 商品数:{}, 用户数:{}", keys.size(), count);
+        } catch (Exception e) {
+            //重建失败只影响命中率，准入仍以redis为准
+            log.warn("[下单用户过滤] 从redis重建失败", e);
+        } finally {
+            this.finishRebuild();
+        }
+    }
+
+    private void scanKeys(Cursor<byte[]> cursor, List<String> keys) {
+        try (Cursor<byte[]> c = cursor) {
+            while (c.hasNext()) {
+                keys.add(new String(c.next()));
+            }
+        } catch (IOException e) {
+            log.warn("[下单用户过滤] 关闭scan游标异常", e);
+        }
+    }
+
+    /**
+     * 重建期间收到的清除可能早于重建写入，重建完成后再清除一次
+     */
+    private void finishRebuild() {
+        Map<Long, Set<Long>> removed;
+        synchronized (this) {
+            rebuilding = false;
+            removed = new HashMap<>(removedDuringRebuild);
+            removedDuringRebuild.clear();
+        }
+        removed.forEach((seckillId, phones) -> {
+            Filter filter = filters.get(seckillId);
+            if (filter != null) {
+                phones.forEach(filter.phones::remove);
+            }
+        });
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        filters.entrySet().removeIf(entry -> now - entry.getValue().lastWrite > IDLE_MILLIS);
+    }
+
+    private static class Filter {
+        private final ConcurrentLongLongMap phones = new ConcurrentLongLongMap(1024);
+        private volatile long lastWrite = System.currentTimeMillis();
+    }
+}
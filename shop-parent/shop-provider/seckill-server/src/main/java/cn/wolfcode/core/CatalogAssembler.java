@@ -0,0 +1,87 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.domain.Product;
+import cn.wolfcode.domain.SeckillProduct;
+import cn.wolfcode.domain.SeckillProductVo;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 秒杀商品列表组装
+ * 1.商品按id建索引后与秒杀商品做hash join，O(n+m)，不再对每个秒杀商品遍历一次商品列表
+ * 2.字段通过setter显式复制，不使用BeanUtils反射
+ * 3.同一场次并发的加载请求合并为一个进行中的future，只有第一个请求查询MySQL与商品服务，其余请求等待同一结果
+ */
+@Component
+public class CatalogAssembler {
+
+    private final Map<Integer, CompletableFuture<List<SeckillProductVo>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 合并同一场次的并发加载
+     */
+    public List<SeckillProductVo> load(Integer time, Supplier<List<SeckillProductVo>> loader) {
+        CompletableFuture<List<SeckillProductVo>> mine = new CompletableFuture<>();
+        CompletableFuture<List<SeckillProductVo>> running = inFlight.putIfAbsent(time, mine);
+        if (running != null) {
+            try {
+                return new ArrayList<>(running.join());
+            } catch (CompletionException e) {
+                //与发起加载的请求抛出相同的异常
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            List<SeckillProductVo> list = loader.get();
+            mine.complete(list);
+            return list;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(time, mine);
+        }
+    }
+
+    public List<SeckillProductVo> assemble(List<SeckillProduct> seckillProducts, List<Product> products) {
+        Map<Long, Product> productMap = new HashMap<>(products.size() * 2);
+        for (Product product : products) {
+            productMap.put(product.getId(), product);
+        }
+        List<SeckillProductVo> productVoList = new ArrayList<>(seckillProducts.size());
+        for (SeckillProduct sp : seckillProducts) {
+            productVoList.add(this.toVo(sp, productMap.get(sp.getProductId())));
+        }
+        return productVoList;
+    }
+
+    /**
+     * id为秒杀商品id：单个商品有可能参与多次秒杀
+     */
+    public SeckillProductVo toVo(SeckillProduct sp, Product product) {
+        SeckillProductVo vo = new SeckillProductVo();
+        vo.setId(sp.getId());
+        vo.setProductId(sp.getProductId());
+        vo.setSeckillPrice(sp.getSeckillPrice());
+        vo.setIntergral(sp.getIntergral());
+        vo.setStockCount(sp.getStockCount());
+        vo.setStartDate(sp.getStartDate());
+        vo.setTime(sp.getTime());
+        if (product != null) {
+            vo.setProductName(product.getProductName());
+            vo.setProductTitle(product.getProductTitle());
+            vo.setProductImg(product.getProductImg());
+            vo.setProductDetail(product.getProductDetail());
+            vo.setProductPrice(product.getProductPrice());
+        }
+        return vo;
+    }
+}
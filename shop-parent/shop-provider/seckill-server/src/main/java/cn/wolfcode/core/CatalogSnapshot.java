@@ -0,0 +1,135 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.common.web.Result;
+import cn.wolfcode.domain.SeckillProductVo;
+import cn.wolfcode.service.ISeckillProductService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 秒杀商品列表快照
+ * 1.每个场次的列表响应(Result JSON)只序列化一次，同时保存原始与gzip两份字节，以内容摘要作为ETag
+ *   使用应用的ObjectMapper序列化，与@RestController返回对象时的报文格式(null字段、日期格式)一致
+ * 2.列表页请求直接返回快照字节，客户端带If-None-Match且内容未变时返回304，不再每次解析/序列化整个列表
+ * 3.库存变化(下单/回补)时标记场次为脏，距上次构建超过refresh-millis才重建，高并发下单时不会每个请求都重建
+ * 4.快照超过max-age-seconds后无论是否变化都重建，覆盖定时任务重新预热商品数据的情况
+ * 5.同一场次并发的重建合并为一个进行中的future，重建(查询redis+序列化)在map锁之外执行，完成后put发布
+ */
+@Component
+public class CatalogSnapshot {
+
+    private final ISeckillProductService seckillProductService;
+    private final LiveStockCounter liveStockCounter;
+    private final ObjectMapper objectMapper;
+    private final Map<Integer, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<Integer, Boolean> dirty = new ConcurrentHashMap<>();
+    private final Map<Integer, CompletableFuture<Snapshot>> building = new ConcurrentHashMap<>();
+
+    @Value("${seckill.catalog.snapshot.refresh-millis:500}")
+    private long refreshMillis;
+    @Value("${seckill.catalog.snapshot.max-age-seconds:10}")
+    private long maxAgeSeconds;
+
+    public CatalogSnapshot(ISeckillProductService seckillProductService, LiveStockCounter liveStockCounter, ObjectMapper objectMapper) {
+        this.seckillProductService = seckillProductService;
+        this.liveStockCounter = liveStockCounter;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 场次商品或库存发生变化
+     */
+    public void markDirty(Integer time) {
+        dirty.put(time, Boolean.TRUE);
+    }
+
+    public Snapshot get(Integer time) {
+        Snapshot snapshot = snapshots.get(time);
+        if (snapshot != null && !this.isStale(time, snapshot)) {
+            return snapshot;
+        }
+        //同一场次只有一个线程重建，其余线程等待后直接使用新快照
+        CompletableFuture<Snapshot> mine = new CompletableFuture<>();
+        CompletableFuture<Snapshot> running = building.putIfAbsent(time, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            //上一个重建的线程可能刚刚发布了新快照
+            Snapshot current = snapshots.get(time);
+            if (current == null || this.isStale(time, current)) {
+                current = this.build(time);
+                snapshots.put(time, current);
+            }
+            mine.complete(current);
+            return current;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            building.remove(time, mine);
+        }
+    }
+
+    private boolean isStale(Integer time, Snapshot snapshot) {
+        long age = System.currentTimeMillis() - snapshot.builtAt;
+        return age >= maxAgeSeconds * 1000 || (age >= refreshMillis && dirty.containsKey(time));
+    }
+
+    private Snapshot build(Integer time) {
+        //先清除脏标记，构建期间的新变化留到下一次
+        dirty.remove(time);
+        List<SeckillProductVo> list = seckillProductService.selectTodayListByTimeFromRedis(time);
+        liveStockCounter.fill(list);
+        byte[] identity;
+        try {
+            identity = objectMapper.writeValueAsBytes(Result.success(list));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Snapshot(identity, gzip(identity), "\"" + DigestUtils.md5DigestAsHex(identity) + "\"", System.currentTimeMillis());
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Getter
+    public static class Snapshot {
+        private final byte[] identity;
+        private final byte[] gzip;
+        private final String etag;
+        private final long builtAt;
+
+        Snapshot(byte[] identity, byte[] gzip, String etag, long builtAt) {
+            this.identity = identity;
+            this.gzip = gzip;
+            this.etag = etag;
+            this.builtAt = builtAt;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.domain.SeckillProductVo;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 秒杀商品实时库存
+ * 缓存中的SeckillProductVo只描述商品与场次，整个场次内不再因为扣减库存而失效；
+ * 剩余库存(currentCount)在读取时从redis各分片 + 本地租借库存汇总得到，不访问MySQL
+ */
+@Component
+public class LiveStockCounter {
+
+    private final StringRedisTemplate redisTemplate;
+    private final StockShardRouter stockShardRouter;
+    private final StockAllotmentEngine stockAllotmentEngine;
+
+    public LiveStockCounter(StringRedisTemplate redisTemplate, StockShardRouter stockShardRouter, StockAllotmentEngine stockAllotmentEngine) {
+        this.redisTemplate = redisTemplate;
+        this.stockShardRouter = stockShardRouter;
+        this.stockAllotmentEngine = stockAllotmentEngine;
+    }
+
+    /**
+     * 返回带实时库存的副本，不修改缓存中的对象
+     */
+    public SeckillProductVo withCurrentCount(SeckillProductVo sp) {
+        SeckillProductVo vo = sp.copy();
+        this.fill(Collections.singletonList(vo));
+        return vo;
+    }
+
+    /**
+     * 一次pipeline读取所有商品所有分片的库存，填充currentCount
+     */
+    public void fill(List<SeckillProductVo> list) {
+        if (list.isEmpty()) {
+            return;
+        }
+        //分片数需要在pipeline之外读取
+        int[] shardCounts = new int[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            shardCounts[i] = stockShardRouter.shardCount(list.get(i).getTime(), list.get(i).getId());
+        }
+        List<Object> counts = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < list.size(); i++) {
+                SeckillProductVo vo = list.get(i);
+                for (int shard = 0; shard < shardCounts[i]; shard++) {
+                    conn.hGet(stockShardRouter.stockKey(vo.getTime(), shard), vo.getId() + "");
+                }
+            }
+            return null;
+        });
+        int index = 0;
+        for (int i = 0; i < list.size(); i++) {
+            SeckillProductVo vo = list.get(i);
+            long current = stockAllotmentEngine.available(vo.getId());
+            for (int shard = 0; shard < shardCounts[i]; shard++) {
+                Object count = counts.get(index++);
+                if (count != null) {
+                    current += Math.max(0, Long.parseLong(count.toString()));
+                }
+            }
+            vo.setCurrentCount((int) current);
+        }
+    }
+}
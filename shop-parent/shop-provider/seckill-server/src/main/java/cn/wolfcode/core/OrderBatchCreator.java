@@ -0,0 +1,220 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.common.web.Result;
+import cn.wolfcode.domain.OrderInfo;
+import cn.wolfcode.mq.DefaultSendCallback;
+import cn.wolfcode.mq.MQConstant;
+import cn.wolfcode.mq.OrderMQResult;
+import cn.wolfcode.mq.OrderMessage;
+import cn.wolfcode.service.IOrderInfoService;
+import cn.wolfcode.web.msg.SeckillCodeMsg;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量创建订单
+ * 1.消费线程提交订单消息后阻塞等待结果，消息仍由消费线程确认，节点宕机时未确认的消息会重新投递
+ * 2.后台线程攒批(最多batch-size条，或等待linger-millis)，按秒杀商品分组：
+ *   一次 stock_count = stock_count - n + 多行insert 在同一个事务中完成
+ * 3.分组事务失败(例如库存不足)时退化为逐条创建，逐条失败的订单单独执行failedRollback
+ * 4.订单结果消息批量发送；支付超时一次登记整批订单
+ * batch-size<=0 时关闭，消费线程逐条创建订单
+ */
+@Slf4j
+@Component
+public class OrderBatchCreator {
+
+    private final IOrderInfoService orderInfoService;
+    private final RocketMQTemplate rocketMQTemplate;
+    private final PayTimeoutScheduler payTimeoutScheduler;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private Thread worker;
+
+    @Value("${seckill.order.batch.size:0}")
+    private int batchSize;
+    @Value("${seckill.order.batch.linger-millis:5}")
+    private long lingerMillis;
+
+    public OrderBatchCreator(IOrderInfoService orderInfoService, RocketMQTemplate rocketMQTemplate, PayTimeoutScheduler payTimeoutScheduler) {
+        this.orderInfoService = orderInfoService;
+        this.rocketMQTemplate = rocketMQTemplate;
+        this.payTimeoutScheduler = payTimeoutScheduler;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::loop, "order-batch-creator");
+        worker.setDaemon(true);
+        worker.start();
+        log.info("[批量下单] 批量创建订单已开启, batchSize:{}, lingerMillis:{}", batchSize, lingerMillis);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return batchSize > 0;
+    }
+
+    /**
+     * 提交订单消息并等待处理完成(创建订单/失败补偿/发送结果都已完成)
+     */
+    public void create(OrderMessage message) {
+        Pending pending = new Pending(message);
+        queue.add(pending);
+        pending.done.join();
+    }
+
+    private void loop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Pending first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < batchSize) {
+                    long wait = deadline - System.nanoTime();
+                    Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                this.process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("[批量下单] 批量创建订单异常", e);
+                batch.forEach(p -> p.done.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+        //未处理的消息交由消费线程失败重试
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.done.completeExceptionally(new IllegalStateException("order batch creator stopped"));
+        }
+    }
+
+    private void process(List<Pending> batch) {
+        List<OrderMessage> messages = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            messages.add(p.message);
+        }
+        this.createAll(messages);
+        batch.forEach(p -> p.done.complete(null));
+    }
+
+    /**
+     * 在当前线程中批量创建订单：分组创建 + 失败补偿 + 批量发送结果
+     */
+    public void createAll(List<OrderMessage> messages) {
+        //按秒杀商品+场次分组
+        Map<String, List<OrderMessage>> groups = new LinkedHashMap<>();
+        for (OrderMessage message : messages) {
+            groups.computeIfAbsent(message.getSeckillId() + ":" + message.getTime(), k -> new ArrayList<>()).add(message);
+        }
+        List<Message<OrderMQResult>> results = new ArrayList<>(messages.size());
+        List<String> created = new ArrayList<>(messages.size());
+        for (List<OrderMessage> group : groups.values()) {
+            this.createGroup(group, results, created);
+        }
+        //订单已存在(本次创建或重复投递) 幂等登记支付截止时间 超时未支付批量取消
+        //事务已经提交，登记失败时抛出异常由消息重新投递，不做失败补偿
+        payTimeoutScheduler.schedule(created);
+        //无论成功还是失败  都要返回订单创建结果消息
+        try {
+            rocketMQTemplate.syncSend(MQConstant.ORDER_RESULT_TOPIC, results, 3000);
+        } catch (Exception e) {
+            log.warn("[批量下单] 批量发送订单结果失败, 逐条发送", e);
+            results.forEach(msg -> rocketMQTemplate.asyncSend(MQConstant.ORDER_RESULT_TOPIC, msg, new DefaultSendCallback("order result")));
+        }
+    }
+
+    private void createGroup(List<OrderMessage> group, List<Message<OrderMQResult>> results, List<String> created) {
+        OrderMessage head = group.get(0);
+        List<Long> phones = new ArrayList<>(group.size());
+        List<String> orderNos = new ArrayList<>(group.size());
+        for (OrderMessage message : group) {
+            phones.add(message.getUserPhone());
+            orderNos.add(message.getOrderNo());
+        }
+        try {
+            List<OrderInfo> orderInfos = orderInfoService.doSeckillBatch(head.getSeckillId(), head.getTime(), phones, orderNos);
+            for (int i = 0; i < group.size(); i++) {
+                results.add(this.success(group.get(i), orderInfos.get(i), created));
+            }
+            return;
+        } catch (Exception e) {
+            log.warn("[批量下单] 分组创建订单失败, 逐条创建 seckillId={}, size={}", head.getSeckillId(), group.size(), e);
+        }
+        for (OrderMessage message : group) {
+            try {
+                OrderInfo orderInfo = orderInfoService.doSeckill(message.getUserPhone(), message.getSeckillId(), message.getTime(), message.getOrderNo());
+                results.add(this.success(message, orderInfo, created));
+            } catch (Exception e) {
+                //创建失败,回补redis数量控制，删除用户下单标识，本地下单标识
+                OrderMQResult orderMQResult = new OrderMQResult();
+                orderMQResult.setToken(message.getToken());
+                if (orderInfoService.failedRollback(message)) {
+                    orderMQResult.setCode(SeckillCodeMsg.SECKILL_ERROR.getCode());
+                    orderMQResult.setMsg(SeckillCodeMsg.SECKILL_ERROR.getMsg());
+                } else {
+                    //消息重复投递，订单已经创建
+                    orderMQResult.setOrderNo(message.getOrderNo());
+                    created.add(message.getOrderNo());
+                    orderMQResult.setCode(Result.SUCCESS_CODE);
+                    orderMQResult.setMsg("order creating successfully");
+                }
+                results.add(MessageBuilder.withPayload(orderMQResult).build());
+            }
+        }
+    }
+
+    private Message<OrderMQResult> success(OrderMessage message, OrderInfo orderInfo, List<String> created) {
+        message.setOrderNo(orderInfo.getOrderNo());
+        created.add(orderInfo.getOrderNo());
+        OrderMQResult orderMQResult = new OrderMQResult();
+        orderMQResult.setToken(message.getToken());
+        orderMQResult.setOrderNo(orderInfo.getOrderNo());
+        orderMQResult.setCode(Result.SUCCESS_CODE);
+        orderMQResult.setMsg("order creating successfully");
+        return MessageBuilder.withPayload(orderMQResult).build();
+    }
+
+    private static class Pending {
+        private final OrderMessage message;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(OrderMessage message) {
+            this.message = message;
+        }
+    }
+}
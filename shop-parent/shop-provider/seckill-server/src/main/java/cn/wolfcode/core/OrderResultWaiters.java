@@ -0,0 +1,155 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.common.web.Result;
+import cn.wolfcode.mq.OrderMQResult;
+import cn.wolfcode.web.msg.SeckillCodeMsg;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单结果长轮询
+ * 1.websocket还没有连上时，客户端按token长轮询订单结果，请求以DeferredResult挂起，不占用servlet线程
+ * 2.订单结果(广播到每个节点)到达时完成该token上挂起的请求，没有挂起的请求先暂存，下一次轮询直接返回
+ * 3.暂存的结果超过ttl后定时清除；轮询超时返回ORDER_RESULT_PENDING，客户端继续轮询
+ * 同一token的挂起请求与暂存结果在一个槽位中，通过ConcurrentHashMap.compute保证原子性
+ */
+@Component
+public class OrderResultWaiters {
+
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    @Value("${seckill.order.result.poll-timeout-millis:10000}")
+    private long pollTimeoutMillis;
+    @Value("${seckill.order.result.stash-seconds:60}")
+    private long stashSeconds;
+
+    public OrderResultWaiters(ScheduledExecutorService scheduledExecutorService) {
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    @PostConstruct
+    public void init() {
+        scheduledExecutorService.scheduleWithFixedDelay(this::evictExpired, stashSeconds, stashSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 挂起一次轮询：已有暂存的结果立即返回，否则等待结果到达或超时
+     */
+    public DeferredResult<Result<OrderMQResult>> poll(String token) {
+        DeferredResult<Result<OrderMQResult>> waiter =
+                new DeferredResult<>(pollTimeoutMillis, Result.error(SeckillCodeMsg.ORDER_RESULT_PENDING));
+        //超时/完成/连接断开后移除，避免结果投递给已经结束的请求
+        waiter.onCompletion(() -> slots.computeIfPresent(token, (k, slot) -> {
+            slot.waiters.remove(waiter);
+            return slot.isEmpty() ? null : slot;
+        }));
+        long now = System.currentTimeMillis();
+        OrderMQResult[] ready = new OrderMQResult[1];
+        slots.compute(token, (k, slot) -> {
+            if (slot == null) {
+                slot = new Slot();
+            }
+            Parked parked;
+            while ((parked = slot.results.poll()) != null) {
+                if (parked.expireAt > now) {
+                    ready[0] = parked.result;
+                    break;
+                }
+            }
+            if (ready[0] == null) {
+                slot.waiters.add(waiter);
+            }
+            return slot.isEmpty() ? null : slot;
+        });
+        if (ready[0] != null) {
+            waiter.setResult(Result.success(ready[0]));
+        }
+        return waiter;
+    }
+
+    /**
+     * 订单结果到达：完成该token上所有挂起的请求(同一用户可能有多个页面在轮询)，没有则暂存
+     */
+    public void complete(OrderMQResult result) {
+        String token = result.getToken();
+        if (token == null) {
+            return;
+        }
+        List<DeferredResult<Result<OrderMQResult>>> waiters = new ArrayList<>();
+        slots.computeIfPresent(token, (k, slot) -> {
+            waiters.addAll(slot.waiters);
+            slot.waiters.clear();
+            return slot.isEmpty() ? null : slot;
+        });
+        boolean delivered = false;
+        for (DeferredResult<Result<OrderMQResult>> waiter : waiters) {
+            //setResult返回false表示请求已经超时结束
+            delivered |= waiter.setResult(Result.success(result));
+        }
+        if (!delivered) {
+            this.stash(token, result);
+        }
+    }
+
+    private void stash(String token, OrderMQResult result) {
+        Parked parked = new Parked(result, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(stashSeconds));
+        List<DeferredResult<Result<OrderMQResult>>> waiter = new ArrayList<>(1);
+        slots.compute(token, (k, slot) -> {
+            if (slot == null) {
+                slot = new Slot();
+            }
+            //暂存期间刚好有新的轮询挂起，直接交给它
+            DeferredResult<Result<OrderMQResult>> first = slot.waiters.poll();
+            if (first != null) {
+                waiter.add(first);
+            } else {
+                slot.results.add(parked);
+            }
+            return slot.isEmpty() ? null : slot;
+        });
+        if (!waiter.isEmpty() && !waiter.get(0).setResult(Result.success(result))) {
+            this.stash(token, result);
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (String token : new ArrayList<>(slots.keySet())) {
+            slots.computeIfPresent(token, (k, slot) -> {
+                slot.results.removeIf(p -> p.expireAt <= now);
+                return slot.isEmpty() ? null : slot;
+            });
+        }
+    }
+
+    private static class Slot {
+        private final Deque<DeferredResult<Result<OrderMQResult>>> waiters = new ArrayDeque<>(1);
+        private final Deque<Parked> results = new ArrayDeque<>(1);
+
+        boolean isEmpty() {
+            return waiters.isEmpty() && results.isEmpty();
+        }
+    }
+
+    private static class Parked {
+        private final OrderMQResult result;
+        private final long expireAt;
+
+        Parked(OrderMQResult result, long expireAt) {
+            this.result = result;
+            this.expireAt = expireAt;
+        }
+    }
+}
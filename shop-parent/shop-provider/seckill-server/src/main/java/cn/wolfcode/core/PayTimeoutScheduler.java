@@ -0,0 +1,141 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.redis.SeckillRedisKey;
+import cn.wolfcode.service.IOrderInfoService;
+import cn.wolfcode.util.TimingWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单支付超时调度
+ * 1.订单创建后登记截止时间：本地分层时间轮负责按时触发，redis ZSET(orderNo => 截止时间)负责持久化
+ * 2.到期的订单先通过脚本从ZSET中认领(ZREM成功才算认领)，再批量取消：
+ *   一条 UPDATE ... WHERE order_no IN (...) AND status = 0，按商品合并回补库存
+ * 3.节点宕机/重启后时间轮丢失，由各节点定时扫描ZSET中超过宽限期仍未被认领的订单兜底
+ * 已支付的订单不需要从ZSET中删除，到期时 status = 0 条件不成立，不会被取消
+ */
+@Slf4j
+@Component
+public class PayTimeoutScheduler {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<List> payTimeoutClaimScript;
+    private final RedisScript<Long> payTimeoutRegisterScript;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final IOrderInfoService orderInfoService;
+    private TimingWheel<String> timingWheel;
+
+    @Value("${seckill.order.pay-timeout.seconds:300}")
+    private long timeoutSeconds;
+    @Value("${seckill.order.pay-timeout.tick-millis:1000}")
+    private long tickMillis;
+    @Value("${seckill.order.pay-timeout.wheel-size:60}")
+    private int wheelSize;
+    @Value("${seckill.order.pay-timeout.batch-size:500}")
+    private int batchSize;
+    @Value("${seckill.order.pay-timeout.recover-seconds:30}")
+    private long recoverSeconds;
+
+    public PayTimeoutScheduler(StringRedisTemplate redisTemplate, RedisScript<List> payTimeoutClaimScript, RedisScript<Long> payTimeoutRegisterScript, ScheduledExecutorService scheduledExecutorService, IOrderInfoService orderInfoService) {
+        this.redisTemplate = redisTemplate;
+        this.payTimeoutClaimScript = payTimeoutClaimScript;
+        this.payTimeoutRegisterScript = payTimeoutRegisterScript;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.orderInfoService = orderInfoService;
+    }
+
+    @PostConstruct
+    public void init() {
+        timingWheel = new TimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+        scheduledExecutorService.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        scheduledExecutorService.scheduleWithFixedDelay(this::recover, recoverSeconds, recoverSeconds, TimeUnit.SECONDS);
+    }
+
+    public void schedule(String orderNo) {
+        this.schedule(Collections.singletonList(orderNo));
+    }
+
+    /**
+     * 登记一批订单的支付截止时间：一次脚本持久化(已登记的不覆盖)，再放入本地时间轮
+     * 幂等：消息重复投递时对已经创建的订单再次登记不会推迟截止时间；写redis失败时抛出异常，由消息重新投递后再次登记
+     */
+    public void schedule(List<String> orderNos) {
+        if (orderNos.isEmpty()) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        List<String> args = new ArrayList<>(orderNos.size() + 1);
+        args.add(deadline + "");
+        args.addAll(orderNos);
+        redisTemplate.execute(payTimeoutRegisterScript, Collections.singletonList(SeckillRedisKey.SECKILL_PAY_TIMEOUT_ZSET.join("")), args.toArray());
+        for (String orderNo : orderNos) {
+            timingWheel.add(orderNo, deadline);
+        }
+    }
+
+    private void tick() {
+        try {
+            List<String> expired = timingWheel.advance(System.currentTimeMillis());
+            for (int from = 0; from < expired.size(); from += batchSize) {
+                this.expire(expired.subList(from, Math.min(from + batchSize, expired.size())));
+            }
+        } catch (Exception e) {
+            log.error("[支付超时] 时间轮处理到期订单异常", e);
+        }
+    }
+
+    /**
+     * 兜底：认领超过宽限期(一次扫描间隔)仍留在ZSET中的订单，正常情况下这些订单已经由登记它的节点处理
+     */
+    private void recover() {
+        String key = SeckillRedisKey.SECKILL_PAY_TIMEOUT_ZSET.join("");
+        long max = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(recoverSeconds);
+        try {
+            Set<String> overdue;
+            do {
+                overdue = redisTemplate.opsForZSet().rangeByScore(key, 0, max, 0, batchSize);
+                if (overdue == null || overdue.isEmpty()) {
+                    return;
+                }
+                log.info("[支付超时] 认领遗留的超时订单, count={}", overdue.size());
+                this.expire(new ArrayList<>(overdue));
+            } while (overdue.size() >= batchSize);
+        } catch (Exception e) {
+            log.error("[支付超时] 扫描遗留超时订单异常", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expire(List<String> orderNos) {
+        String key = SeckillRedisKey.SECKILL_PAY_TIMEOUT_ZSET.join("");
+        List<String> claimed = redisTemplate.execute(payTimeoutClaimScript, Collections.singletonList(key), orderNos.toArray());
+        if (claimed == null || claimed.isEmpty()) {
+            return;
+        }
+        try {
+            orderInfoService.expirePayTimeout(claimed);
+        } catch (Exception e) {
+            //取消失败：放回ZSET(立即到期)，由兜底扫描重试
+            log.error("[支付超时] 批量取消订单失败, count={}", claimed.size(), e);
+            Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(claimed.size() * 2);
+            for (String orderNo : claimed) {
+                tuples.add(new DefaultTypedTuple<>(orderNo, 0D));
+            }
+            redisTemplate.opsForZSet().add(key, tuples);
+        }
+    }
+}
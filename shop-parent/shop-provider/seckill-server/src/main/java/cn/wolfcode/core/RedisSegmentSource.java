@@ -0,0 +1,26 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.redis.SeckillRedisKey;
+import cn.wolfcode.util.IdGenerateUtil;
+import cn.wolfcode.util.SegmentIdAllocator;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 号段计数器(redis)：seckillIdSegment:{bizTag}
+ * 计数器不存在(首次使用或redis数据丢失)时先以当前雪花id播种，雪花id随时间增长，播种后的号段一定大于之前发出的所有id
+ */
+public class RedisSegmentSource implements SegmentIdAllocator.SegmentSource {
+
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisSegmentSource(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public long nextMax(String bizTag, int step) {
+        String key = SeckillRedisKey.SECKILL_ID_SEGMENT.join(bizTag);
+        redisTemplate.opsForValue().setIfAbsent(key, IdGenerateUtil.get().nextId() + "");
+        return redisTemplate.opsForValue().increment(key, step);
+    }
+}
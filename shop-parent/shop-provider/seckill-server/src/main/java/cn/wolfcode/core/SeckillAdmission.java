@@ -0,0 +1,123 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.domain.SeckillProductVo;
+import cn.wolfcode.util.AssertUtils;
+import lombok.Getter;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * 秒杀准入：重复下单校验 + 库存预减
+ * 1.默认在用户主分片上执行准入脚本，一次往返完成
+ * 2.主分片库存耗尽时，先占用用户下单标识，再依次从兄弟分片扣减库存，全部耗尽才算售罄
+ * 3.开启本地库存分配时，库存在本地扣减，redis只记录用户下单标识
+ */
+@Component
+public class SeckillAdmission {
+    /*
+    准入脚本返回值：>=0 为扣减后的剩余库存，-1 库存不足，-2 重复下单
+     */
+    private static final long SCRIPT_STOCK_OVER = -1L;
+    private static final long SCRIPT_REPEAT = -2L;
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<Long> seckillAdmissionScript;
+    private final RedisScript<Long> stockLeaseScript;
+    private final StockShardRouter stockShardRouter;
+    private final StockAllotmentEngine stockAllotmentEngine;
+
+    public SeckillAdmission(StringRedisTemplate redisTemplate, RedisScript<Long> seckillAdmissionScript, RedisScript<Long> stockLeaseScript, StockShardRouter stockShardRouter, StockAllotmentEngine stockAllotmentEngine) {
+        this.redisTemplate = redisTemplate;
+        this.seckillAdmissionScript = seckillAdmissionScript;
+        this.stockLeaseScript = stockLeaseScript;
+        this.stockShardRouter = stockShardRouter;
+        this.stockAllotmentEngine = stockAllotmentEngine;
+    }
+
+    public AdmissionResult admit(SeckillProductVo sp, Long phone) {
+        Integer time = sp.getTime();
+        Long seckillId = sp.getId();
+        int shardCount = stockShardRouter.shardCount(time, seckillId);
+        int home = stockShardRouter.homeShard(time, seckillId, phone);
+        String userOrderFlag = stockShardRouter.orderFlagKey(time, seckillId, home);
+        if (stockAllotmentEngine.isEnabled()) {
+            return this.admitByAllotment(sp, userOrderFlag, phone, home);
+        }
+        Long remain = redisTemplate.execute(seckillAdmissionScript,
+                Arrays.asList(userOrderFlag, stockShardRouter.stockKey(time, home)),
+                phone + "", seckillId + "");
+        AssertUtils.notNull(remain, "admission failed!");
+        if (remain == SCRIPT_REPEAT) {
+            return AdmissionResult.REPEAT;
+        }
+        if (remain != SCRIPT_STOCK_OVER) {
+            //只有一个分片时，剩余为0即整个商品售罄
+            return AdmissionResult.success(home, shardCount == 1 && remain == 0);
+        }
+        if (shardCount == 1) {
+            return AdmissionResult.STOCK_OVER;
+        }
+        //主分片已耗尽：先占用下单标识，防止同一用户并发从多个分片扣减
+        if (!this.claimUserFlag(userOrderFlag, phone)) {
+            return AdmissionResult.REPEAT;
+        }
+        for (int i = 1; i < shardCount; i++) {
+            int shard = (home + i) % shardCount;
+            Long taken = redisTemplate.execute(stockLeaseScript,
+                    Collections.singletonList(stockShardRouter.stockKey(time, shard)), seckillId + "", "1");
+            if (taken != null && taken > 0) {
+                return AdmissionResult.success(shard, false);
+            }
+        }
+        redisTemplate.opsForHash().delete(userOrderFlag, phone + "");
+        return AdmissionResult.STOCK_OVER;
+    }
+
+    private AdmissionResult admitByAllotment(SeckillProductVo sp, String userOrderFlag, Long phone, int home) {
+        if (!this.claimUserFlag(userOrderFlag, phone)) {
+            return AdmissionResult.REPEAT;
+        }
+        if (!stockAllotmentEngine.tryAcquire(sp)) {
+            //库存不足 删除刚写入的用户下单标识
+            redisTemplate.opsForHash().delete(userOrderFlag, phone + "");
+            return AdmissionResult.STOCK_OVER;
+        }
+        //本地库存不区分分片，回补时落在用户主分片即可保证总数不变
+        return AdmissionResult.success(home, false);
+    }
+
+    private boolean claimUserFlag(String userOrderFlag, Long phone) {
+        Boolean first = redisTemplate.opsForHash().putIfAbsent(userOrderFlag, phone + "", "1");
+        return first != null && first;
+    }
+
+    /**
+     * 准入结果，成功时带上扣减库存的分片，用于失败后回补
+     * exhausted：本次扣减拿到了商品的最后一件
+     */
+    @Getter
+    public static class AdmissionResult {
+        public static final AdmissionResult STOCK_OVER = new AdmissionResult(false, false, -1, false);
+        public static final AdmissionResult REPEAT = new AdmissionResult(false, true, -1, false);
+
+        private final boolean admitted;
+        private final boolean repeat;
+        private final int shard;
+        private final boolean exhausted;
+
+        private AdmissionResult(boolean admitted, boolean repeat, int shard, boolean exhausted) {
+            this.admitted = admitted;
+            this.repeat = repeat;
+            this.shard = shard;
+            this.exhausted = exhausted;
+        }
+
+        static AdmissionResult success(int shard, boolean exhausted) {
+            return new AdmissionResult(true, false, shard, exhausted);
+        }
+    }
+}
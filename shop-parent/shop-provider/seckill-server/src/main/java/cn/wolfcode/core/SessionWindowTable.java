@@ -0,0 +1,106 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.domain.SeckillProductVo;
+import cn.wolfcode.util.DateUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 秒杀场次时间窗口表
+ * 1.秒杀商品加载时预先计算好场次的开始/结束时间戳，下单时只做两次long比较，不再创建Calendar/Date
+ * 2.记录窗口对应的秒杀日期，商品日期变化(跨天重新加载场次)时自动重新计算
+ * 3.定时任务重新加载场次时清理已经结束的窗口
+ */
+@Slf4j
+@Component
+public class SessionWindowTable {
+
+    private final Map<Long, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * 当前时间是否在秒杀场次时间范围内，窗口不存在时根据秒杀商品计算并登记
+     */
+    public boolean isOpen(SeckillProductVo sp) {
+        Window window = this.windowOf(sp);
+        long now = System.currentTimeMillis();
+        return window.start <= now && now < window.end;
+    }
+
+    /**
+     * 场次结束时间戳
+     */
+    public long endTime(SeckillProductVo sp) {
+        return this.windowOf(sp).end;
+    }
+
+    private Window windowOf(SeckillProductVo sp) {
+        Window window = windows.get(sp.getId());
+        if (window == null || window.startDate != sp.getStartDate().getTime() || window.time != sp.getTime()) {
+            window = this.put(sp);
+        }
+        return window;
+    }
+
+    /**
+     * 当前处于秒杀时间内的商品：seckillId => 场次
+     */
+    public Map<Long, Integer> openSessions() {
+        long now = System.currentTimeMillis();
+        Map<Long, Integer> open = new HashMap<>();
+        windows.forEach((seckillId, window) -> {
+            if (window.start <= now && now < window.end) {
+                open.put(seckillId, window.time);
+            }
+        });
+        return open;
+    }
+
+    /**
+     * 登记秒杀商品的场次窗口
+     */
+    public void register(SeckillProductVo sp) {
+        this.put(sp);
+    }
+
+    private Window put(SeckillProductVo sp) {
+        Date startDate = sp.getStartDate();
+        long start = DateUtil.getStartTime(startDate, sp.getTime());
+        Window window = new Window(startDate.getTime(), sp.getTime(), start, DateUtil.getEndTime(startDate, sp.getTime()));
+        windows.put(sp.getId(), window);
+        return window;
+    }
+
+    /**
+     * 重新加载场次：登记当天的场次，并清理已经结束的窗口(跨天后前一天的场次)
+     */
+    public void reload(List<SeckillProductVo> list) {
+        long now = System.currentTimeMillis();
+        int before = windows.size();
+        windows.values().removeIf(window -> window.end <= now);
+        int removed = before - windows.size();
+        for (SeckillProductVo sp : list) {
+            this.register(sp);
+        }
+        log.info("[场次窗口] 重新加载场次窗口, 清理已结束:{}, 当前:{}", removed, windows.size());
+    }
+
+    private static class Window {
+        private final long startDate;//秒杀日期
+        private final int time;//场次
+        private final long start;
+        private final long end;
+
+        Window(long startDate, int time, long start, long end) {
+            this.startDate = startDate;
+            this.time = time;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
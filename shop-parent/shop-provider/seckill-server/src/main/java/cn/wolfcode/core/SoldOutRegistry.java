@@ -0,0 +1,89 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.mq.DefaultSendCallback;
+import cn.wolfcode.mq.MQConstant;
+import cn.wolfcode.mq.SoldOutMessage;
+import cn.wolfcode.redis.SeckillRedisKey;
+import cn.wolfcode.util.ConcurrentLongLongMap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 集群售罄标识
+ * 1.任意节点发现库存为0时，本地立即标记并广播SOLD_OUT，其余节点无需再各自访问一次redis
+ * 2.库存回补后广播取消售罄
+ * 3.每个标识带有redis全局递增的版本号，只接受更新的版本，乱序到达的过期取消消息不会清除新的售罄标识
+ * 本地状态：version << 1 | soldOut
+ */
+@Slf4j
+@Component
+public class SoldOutRegistry {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RocketMQTemplate rocketMQTemplate;
+    private final ConcurrentLongLongMap states = new ConcurrentLongLongMap();
+
+    public SoldOutRegistry(StringRedisTemplate redisTemplate, RocketMQTemplate rocketMQTemplate) {
+        this.redisTemplate = redisTemplate;
+        this.rocketMQTemplate = rocketMQTemplate;
+    }
+
+    public boolean isSoldOut(long seckillId) {
+        return (states.get(seckillId) & 1L) == 1L;
+    }
+
+    /**
+     * 当前节点发现库存为0：本地立即生效并广播
+     */
+    public void markSoldOut(long seckillId) {
+        if (this.isSoldOut(seckillId)) {
+            return;
+        }
+        this.publish(seckillId, true, null, null);
+    }
+
+    /**
+     * 库存回补后取消售罄：广播到所有节点(包括当前节点)
+     */
+    public void cancelSoldOut(long seckillId) {
+        this.publish(seckillId, false, null, null);
+    }
+
+    /**
+     * 取消售罄，同时通知各节点清除该用户的本地下单标识(用户下单标识已从redis删除)
+     */
+    public void cancelSoldOut(long seckillId, Long userPhone) {
+        this.publish(seckillId, false, userPhone, null);
+    }
+
+    /**
+     * 批量取消：同一商品的多个用户合并为一条广播
+     */
+    public void cancelSoldOut(long seckillId, List<Long> userPhones) {
+        this.publish(seckillId, false, null, userPhones);
+    }
+
+    /**
+     * 应用广播消息，版本号不大于本地版本时忽略
+     *
+     * @return 是否生效
+     */
+    public boolean apply(long seckillId, long version, boolean soldOut) {
+        long state = version << 1 | (soldOut ? 1L : 0L);
+        return states.update(seckillId, (current, next) -> (next >>> 1) > (current >>> 1) ? next : current, state) == state;
+    }
+
+    private void publish(long seckillId, boolean soldOut, Long userPhone, List<Long> userPhones) {
+        Long version = redisTemplate.opsForHash().increment(SeckillRedisKey.SECKILL_STOCK_OVER_VERSION_HASH.join(""), seckillId + "", 1);
+        if (soldOut) {
+            this.apply(seckillId, version, true);
+        }
+        String topic = soldOut ? MQConstant.SECKILL_SOLD_OUT_TOPIC : MQConstant.CANCEL_SECKILL_OVER_SIGE_TOPIC;
+        rocketMQTemplate.asyncSend(topic, new SoldOutMessage(seckillId, version, soldOut, userPhone, userPhones),
+                new DefaultSendCallback(soldOut ? "商品售罄标识" : "取消本地标识"));
+    }
+}
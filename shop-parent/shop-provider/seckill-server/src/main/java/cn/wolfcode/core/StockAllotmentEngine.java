@@ -0,0 +1,192 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.domain.SeckillProductVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地库存分配引擎
+ * 1.每个节点从redis库存中批量租借一段库存，下单时在本地通过CAS扣减，不再每次请求访问redis热点key
+ * 2.本地库存用完后再向redis租借下一批，redis中剩余库存为0时租借失败=>售罄
+ * 3.场次结束或节点下线时，将未用完的库存归还redis，保证全局库存总数不变
+ * batch-size<=0 时关闭，退化为每次请求执行准入脚本
+ */
+@Slf4j
+@Component
+public class StockAllotmentEngine {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<Long> stockLeaseScript;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final StockShardRouter stockShardRouter;
+    private final SessionWindowTable sessionWindowTable;
+    private final Map<Long, Allotment> allotments = new ConcurrentHashMap<>();
+
+    @Value("${seckill.stock.allotment.batch-size:0}")
+    private int batchSize;
+    @Value("${seckill.stock.allotment.sweep-seconds:30}")
+    private long sweepSeconds;
+
+    public StockAllotmentEngine(StringRedisTemplate redisTemplate, RedisScript<Long> stockLeaseScript, ScheduledExecutorService scheduledExecutorService, StockShardRouter stockShardRouter, SessionWindowTable sessionWindowTable) {
+        this.redisTemplate = redisTemplate;
+        this.stockLeaseScript = stockLeaseScript;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.stockShardRouter = stockShardRouter;
+        this.sessionWindowTable = sessionWindowTable;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        log.info("[库存分配] 本地库存分配已开启, 每批租借数量:{}", batchSize);
+        //定时归还已结束场次的本地库存
+        scheduledExecutorService.scheduleWithFixedDelay(this::releaseEnded, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+    }
+
+    public boolean isEnabled() {
+        return batchSize > 0;
+    }
+
+    /**
+     * 从本地库存中扣减一件，本地不足时向redis租借下一批
+     *
+     * @param sp 秒杀商品
+     * @return 扣减成功返回true，redis中也没有库存时返回false
+     */
+    public boolean tryAcquire(SeckillProductVo sp) {
+        Allotment allotment = allotments.computeIfAbsent(sp.getId(),
+                id -> new Allotment(id, sp.getTime(), sessionWindowTable.endTime(sp)));
+        if (allotment.tryDecrement()) {
+            return true;
+        }
+        //本地库存为0，同一商品只允许一个线程去租借，其余线程等待租借结果
+        synchronized (allotment) {
+            if (allotment.tryDecrement()) {
+                return true;
+            }
+            int leased = this.lease(allotment);
+            if (leased <= 0) {
+                return false;
+            }
+            //自己先占用一件，剩余放入本地
+            allotment.units.addAndGet(leased - 1);
+            //租借期间已被归还(场次结束/节点下线)，剩余部分立即归还
+            if (allotments.get(allotment.seckillId) != allotment) {
+                this.giveBack(allotment);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 当前节点本地剩余的库存
+     */
+    public int available(Long seckillId) {
+        Allotment allotment = allotments.get(seckillId);
+        return allotment == null ? 0 : allotment.units.get();
+    }
+
+    /**
+     * 将本地剩余库存归还redis
+     */
+    public void release(Long seckillId) {
+        Allotment allotment = allotments.remove(seckillId);
+        if (allotment != null) {
+            this.giveBack(allotment);
+        }
+    }
+
+    /**
+     * 节点下线时归还全部本地库存
+     */
+    @PreDestroy
+    public void releaseAll() {
+        for (Long seckillId : allotments.keySet()) {
+            this.release(seckillId);
+        }
+    }
+
+    private void releaseEnded() {
+        long now = System.currentTimeMillis();
+        try {
+            for (Allotment allotment : allotments.values()) {
+                if (allotment.endTime <= now) {
+                    this.release(allotment.seckillId);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("[库存分配] 归还已结束场次库存异常", e);
+        }
+    }
+
+    /**
+     * 从上次租借的分片开始依次尝试，所有分片都耗尽才返回0
+     */
+    private int lease(Allotment allotment) {
+        int shardCount = stockShardRouter.shardCount(allotment.time, allotment.seckillId);
+        for (int i = 0; i < shardCount; i++) {
+            int shard = (allotment.shard + i) % shardCount;
+            Long leased = redisTemplate.execute(stockLeaseScript,
+                    Collections.singletonList(stockShardRouter.stockKey(allotment.time, shard)),
+                    allotment.seckillId + "", batchSize + "");
+            if (leased != null && leased > 0) {
+                log.info("[库存分配] 租借库存 seckillId={}, shard={}, leased={}", allotment.seckillId, shard, leased);
+                allotment.shard = shard;
+                return leased.intValue();
+            }
+        }
+        return 0;
+    }
+
+    private void giveBack(Allotment allotment) {
+        int units = allotment.units.getAndSet(0);
+        if (units <= 0) {
+            return;
+        }
+        String hashKey = stockShardRouter.stockKey(allotment.time, allotment.shard);
+        redisTemplate.opsForHash().increment(hashKey, allotment.seckillId + "", units);
+        log.info("[库存分配] 归还库存 seckillId={}, units={}", allotment.seckillId, units);
+    }
+
+    private static class Allotment {
+        private final Long seckillId;
+        private final Integer time;
+        private final long endTime;
+        private final AtomicInteger units = new AtomicInteger();
+        //最近一次租借的分片，起始分片随机，避免所有节点同时租借同一分片
+        private volatile int shard;
+
+        Allotment(Long seckillId, Integer time, long endTime) {
+            this.seckillId = seckillId;
+            this.time = time;
+            this.endTime = endTime;
+            this.shard = ThreadLocalRandom.current().nextInt(1024);
+        }
+
+        boolean tryDecrement() {
+            int current;
+            do {
+                current = units.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!units.compareAndSet(current, current - 1));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package cn.wolfcode.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 库存补偿台账
+ * 1.每个失败/取消/退款的订单只回补自己占用的一件库存：按订单号HSETNX记账，记账成功才HINCRBY，重复补偿直接跳过
+ * 2.台账与库存分片在同一个slot(seckillStockCompensation:{time:shard})，记账和回补在一个脚本中原子完成
+ * 3.只做增量回补，不读取MySQL，不覆盖redis中正在被并发扣减的库存
+ */
+@Slf4j
+@Component
+public class StockCompensationLedger {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<Long> stockCompensateScript;
+    private final StockShardRouter stockShardRouter;
+
+    @Value("${seckill.stock.compensation.ttl-hours:48}")
+    private long ttlHours;
+
+    public StockCompensationLedger(StringRedisTemplate redisTemplate, RedisScript<Long> stockCompensateScript, StockShardRouter stockShardRouter) {
+        this.redisTemplate = redisTemplate;
+        this.stockCompensateScript = stockCompensateScript;
+        this.stockShardRouter = stockShardRouter;
+    }
+
+    /**
+     * 为一批订单回补库存，每个订单一件，已经补偿过的订单跳过
+     *
+     * @return 实际回补的数量
+     */
+    public long compensate(Integer time, int shard, Long seckillId, List<String> orderNos) {
+        String[] args = new String[orderNos.size() + 2];
+        args[0] = seckillId + "";
+        args[1] = TimeUnit.HOURS.toSeconds(ttlHours) + "";
+        for (int i = 0; i < orderNos.size(); i++) {
+            args[i + 2] = orderNos.get(i);
+        }
+        Long applied = redisTemplate.execute(stockCompensateScript,
+                Arrays.asList(stockShardRouter.compensationKey(time, shard), stockShardRouter.stockKey(time, shard)),
+                (Object[]) args);
+        long count = applied == null ? 0 : applied;
+        if (count < orderNos.size()) {
+            log.info("[库存补偿] 跳过已补偿的订单 seckillId={}, orders={}, applied={}", seckillId, orderNos.size(), count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,155 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.redis.SeckillRedisKey;
+import cn.wolfcode.service.IOrderInfoService;
+import cn.wolfcode.service.ISeckillProductService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis库存漂移对账
+ * 1.定时比较秒杀中商品的 redis各分片库存之和 与 MySQL stock_count
+ * 2.下单消息在途(已准入、订单未落库)时redis本来就比MySQL少，在途订单数 = 用户下单标识数 - 仍保留标识的MySQL订单数
+ *   (下单标识在准入时写入，创建失败回滚、超时取消时删除，退款不删除；因此订单数只统计未付款/已付款/已退款的订单)
+ * 3.连续两次采样 MySQL库存、漂移、下单标识数、订单数 完全相同才修正，两次采样之间没有新的准入与落库
+ * 4.redis少于MySQL(补偿丢失)只在两次采样在途订单数都为0时才补回，有在途订单(消费者停顿/积压)时补回会超卖，不补
+ *   redis多于MySQL(重复补偿)时在途订单只会让真实漂移更大，扣回漂移值是安全的
+ * 5.修正使用HINCRBY增量调整，不覆盖正在被并发扣减的库存；下调时依次从各分片扣减，不扣成负数
+ * 6.每一轮只有抢到redis锁的节点执行，避免多个节点重复修正
+ * 开启本地库存分配时redis只是库存池的一部分，无法对账，不启动
+ */
+@Slf4j
+@Component
+public class StockDriftReconciler {
+
+    private final StringRedisTemplate redisTemplate;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final ISeckillProductService seckillProductService;
+    private final StockShardRouter stockShardRouter;
+    private final StockAllotmentEngine stockAllotmentEngine;
+    private final SessionWindowTable sessionWindowTable;
+    private final IOrderInfoService orderInfoService;
+    //seckillId => 上一次采样 {MySQL库存, 漂移, 下单标识数, 订单数}
+    private final Map<Long, long[]> lastSamples = new ConcurrentHashMap<>();
+
+    @Value("${seckill.stock.reconcile.seconds:60}")
+    private long reconcileSeconds;
+
+    public StockDriftReconciler(StringRedisTemplate redisTemplate, ScheduledExecutorService scheduledExecutorService, ISeckillProductService seckillProductService, StockShardRouter stockShardRouter, StockAllotmentEngine stockAllotmentEngine, SessionWindowTable sessionWindowTable, IOrderInfoService orderInfoService) {
+        this.redisTemplate = redisTemplate;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.seckillProductService = seckillProductService;
+        this.stockShardRouter = stockShardRouter;
+        this.stockAllotmentEngine = stockAllotmentEngine;
+        this.sessionWindowTable = sessionWindowTable;
+        this.orderInfoService = orderInfoService;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (reconcileSeconds <= 0 || stockAllotmentEngine.isEnabled()) {
+            return;
+        }
+        scheduledExecutorService.scheduleWithFixedDelay(this::reconcile, reconcileSeconds, reconcileSeconds, TimeUnit.SECONDS);
+    }
+
+    void reconcile() {
+        //锁的过期时间略短于对账间隔，下一轮重新竞争
+        Boolean owner = redisTemplate.opsForValue().setIfAbsent(SeckillRedisKey.SECKILL_STOCK_RECONCILE_LOCK.join(""), "1",
+                Math.max(1, reconcileSeconds - 1), TimeUnit.SECONDS);
+        if (owner == null || !owner) {
+            lastSamples.clear();
+            return;
+        }
+        Map<Long, Integer> open = sessionWindowTable.openSessions();
+        lastSamples.keySet().retainAll(open.keySet());
+        open.forEach((seckillId, time) -> {
+            try {
+                this.reconcile(seckillId, time);
+            } catch (Exception e) {
+                log.warn("[库存对账] 对账异常 seckillId={}", seckillId, e);
+            }
+        });
+    }
+
+    private void reconcile(Long seckillId, Integer time) {
+        Long dbStock = seckillProductService.selectStockCountId(seckillId);
+        if (dbStock == null) {
+            return;
+        }
+        int shardCount = stockShardRouter.shardCount(time, seckillId);
+        //先读redis再读MySQL订单数：期间落库的订单只会让在途数偏小一次，下一次采样不同，不会修正
+        long[] sample = this.readRedis(seckillId, time, shardCount);
+        long redisStock = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            redisStock += sample[shard];
+        }
+        long flags = sample[shardCount];
+        long orders = orderInfoService.countFlaggedBySeckillId(seckillId);
+        long drift = redisStock - dbStock;
+        long inflight = flags - orders;
+        long[] current = new long[]{dbStock, drift, flags, orders};
+        long[] last = lastSamples.put(seckillId, current);
+        if (drift == 0 || last == null || !Arrays.equals(last, current)) {
+            return;
+        }
+        if (drift < 0 && inflight != 0) {
+            log.info("[库存对账] redis库存低于MySQL但有在途订单，不补回 seckillId={}, drift={}, inflight={}", seckillId, drift, inflight);
+            return;
+        }
+        log.warn("[库存对账] redis库存漂移 seckillId={}, redis={}, mysql={}, drift={}, inflight={}", seckillId, redisStock, dbStock, drift, inflight);
+        if (drift < 0) {
+            //redis少了(补偿丢失)且没有在途订单：补在第一个分片
+            redisTemplate.opsForHash().increment(stockShardRouter.stockKey(time, 0), seckillId + "", -drift);
+        } else {
+            //redis多了(重复补偿)：从各分片扣回，最多扣到0
+            long remain = drift;
+            for (int shard = 0; shard < shardCount && remain > 0; shard++) {
+                long take = Math.min(remain, sample[shard]);
+                if (take > 0) {
+                    redisTemplate.opsForHash().increment(stockShardRouter.stockKey(time, shard), seckillId + "", -take);
+                    remain -= take;
+                }
+            }
+        }
+        lastSamples.remove(seckillId);
+    }
+
+    /**
+     * 一次pipeline读取各分片库存和下单标识数
+     *
+     * @return 前shardCount个为各分片库存，最后一个为所有分片的下单标识数之和
+     */
+    private long[] readRedis(Long seckillId, Integer time, int shardCount) {
+        List<Object> values = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int shard = 0; shard < shardCount; shard++) {
+                conn.hGet(stockShardRouter.stockKey(time, shard), seckillId + "");
+            }
+            for (int shard = 0; shard < shardCount; shard++) {
+                conn.hLen(stockShardRouter.orderFlagKey(time, seckillId, shard));
+            }
+            return null;
+        });
+        long[] sample = new long[shardCount + 1];
+        for (int shard = 0; shard < shardCount; shard++) {
+            Object value = values.get(shard);
+            sample[shard] = value == null ? 0 : Long.parseLong(value.toString());
+            Object flags = values.get(shardCount + shard);
+            sample[shardCount] += flags == null ? 0 : Long.parseLong(flags.toString());
+        }
+        return sample;
+    }
+}
@@ -0,0 +1,100 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.domain.SeckillProductVo;
+import cn.wolfcode.mq.DefaultSendCallback;
+import cn.wolfcode.mq.MQConstant;
+import cn.wolfcode.mq.StockPushMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实时库存推送
+ * 1.下单/回补时只把商品标记为脏(seckillId => 场次)，不在请求线程中读取库存
+ * 2.定时按场次合并脏商品，一次pipeline读取实时库存，发送一条推送消息，由websocket节点推送给订阅该场次的客户端
+ * 3.每秒最多推送rate次，同一商品在一个周期内的多次变化合并为一次
+ * rate<=0 时关闭
+ */
+@Slf4j
+@Component
+public class StockPushPublisher {
+
+    private final LiveStockCounter liveStockCounter;
+    private final RocketMQTemplate rocketMQTemplate;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final CatalogSnapshot catalogSnapshot;
+    private final Map<Long, Integer> dirty = new ConcurrentHashMap<>();
+
+    @Value("${seckill.stock.push.rate:2}")
+    private int rate;
+
+    public StockPushPublisher(LiveStockCounter liveStockCounter, RocketMQTemplate rocketMQTemplate, ScheduledExecutorService scheduledExecutorService, CatalogSnapshot catalogSnapshot) {
+        this.liveStockCounter = liveStockCounter;
+        this.rocketMQTemplate = rocketMQTemplate;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.catalogSnapshot = catalogSnapshot;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (rate <= 0) {
+            return;
+        }
+        long period = Math.max(1, 1000 / rate);
+        scheduledExecutorService.scheduleWithFixedDelay(this::publish, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 商品库存发生变化
+     */
+    public void markDirty(Integer time, Long seckillId) {
+        //列表页快照与推送是否开启无关
+        catalogSnapshot.markDirty(time);
+        if (rate > 0) {
+            dirty.put(seckillId, time);
+        }
+    }
+
+    private void publish() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        try {
+            //按场次分组，取出后再读取库存，读取期间的新变化留到下个周期
+            Map<Integer, List<SeckillProductVo>> slots = new HashMap<>();
+            Iterator<Map.Entry<Long, Integer>> iterator = dirty.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Integer> entry = iterator.next();
+                iterator.remove();
+                SeckillProductVo vo = new SeckillProductVo();
+                vo.setId(entry.getKey());
+                vo.setTime(entry.getValue());
+                slots.computeIfAbsent(entry.getValue(), k -> new ArrayList<>()).add(vo);
+            }
+            List<SeckillProductVo> all = new ArrayList<>();
+            slots.values().forEach(all::addAll);
+            liveStockCounter.fill(all);
+            slots.forEach((time, list) -> {
+                List<StockPushMessage.StockItem> items = new ArrayList<>(list.size());
+                for (SeckillProductVo vo : list) {
+                    items.add(new StockPushMessage.StockItem(vo.getId(), vo.getCurrentCount(), vo.getCurrentCount() <= 0));
+                }
+                rocketMQTemplate.asyncSend(MQConstant.SECKILL_STOCK_PUSH_TOPIC, new StockPushMessage(time, items),
+                        new DefaultSendCallback("实时库存推送"));
+            });
+        } catch (Exception e) {
+            log.warn("[库存推送] 推送实时库存异常", e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.redis.SeckillRedisKey;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 秒杀库存分片路由
+ * 预热任务把每个商品的库存拆分到N个分片hash中：seckillStockCount:{time:shard} => {seckillId:count}
+ * 分片数记录在 seckillStockShards:{time} 中，每个商品只需要读取一次
+ * 用户下单标识与用户的主分片放在同一个slot：seckillOrderHash:{time:shard}:seckillId
+ */
+@Component
+public class StockShardRouter {
+
+    private final StringRedisTemplate redisTemplate;
+    private final Map<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+
+    public StockShardRouter(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 商品库存的分片数，未预热的商品视为1个分片
+     */
+    public int shardCount(Integer time, Long seckillId) {
+        Integer count = shardCounts.get(seckillId);
+        if (count != null) {
+            return count;
+        }
+        Object value = redisTemplate.opsForHash().get(SeckillRedisKey.SECKILL_STOCK_SHARD_HASH.join(time + ""), seckillId + "");
+        if (value == null) {
+            return 1;
+        }
+        count = Math.max(1, Integer.parseInt(value.toString()));
+        shardCounts.put(seckillId, count);
+        return count;
+    }
+
+    /**
+     * 用户的主分片：同一用户始终落在同一分片，用户下单标识也保存在这个分片
+     */
+    public int homeShard(Integer time, Long seckillId, Long phone) {
+        return (int) Math.floorMod(phone, (long) this.shardCount(time, seckillId));
+    }
+
+    public String stockKey(Integer time, int shard) {
+        return SeckillRedisKey.SECKILL_STOCK_COUNT_HASH.joinShard(time + "", shard);
+    }
+
+    /**
+     * 库存补偿台账，与库存分片在同一个slot
+     */
+    public String compensationKey(Integer time, int shard) {
+        return SeckillRedisKey.SECKILL_STOCK_COMPENSATION_HASH.joinShard(time + "", shard);
+    }
+
+    public String orderFlagKey(Integer time, Long seckillId, int shard) {
+        return SeckillRedisKey.SECKILL_ORDER_HASH.joinShard(time + "", shard) + ":" + seckillId;
+    }
+
+    /**
+     * 用户下单标识所在的key(主分片)
+     */
+    public String orderFlagKey(Integer time, Long seckillId, Long phone) {
+        return this.orderFlagKey(time, seckillId, this.homeShard(time, seckillId, phone));
+    }
+}
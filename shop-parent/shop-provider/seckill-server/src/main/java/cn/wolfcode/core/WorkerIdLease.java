@@ -0,0 +1,91 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.redis.SeckillRedisKey;
+import cn.wolfcode.util.IdGenerateUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * id生成器节点编号租约
+ * 1.启动时从redis中租借一个空闲的节点编号(SET NX EX)，分配给 IdGenerateUtil.get()，不同节点生成的id不会冲突
+ * 2.每 ttl/3 续期一次；续期失败(租约已过期或被其他节点占用)时重新租借一个编号
+ * 3.节点下线时释放编号；节点宕机时租约过期后编号自动回收
+ */
+@Slf4j
+@Component
+public class WorkerIdLease {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<Long> workerIdLeaseScript;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final String token = UUID.randomUUID().toString();
+    private volatile int slot = -1;
+
+    @Value("${seckill.id.lease-seconds:30}")
+    private long leaseSeconds;
+
+    public WorkerIdLease(StringRedisTemplate redisTemplate, RedisScript<Long> workerIdLeaseScript, ScheduledExecutorService scheduledExecutorService) {
+        this.redisTemplate = redisTemplate;
+        this.workerIdLeaseScript = workerIdLeaseScript;
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.acquire();
+        long period = Math.max(1, leaseSeconds / 3);
+        scheduledExecutorService.scheduleWithFixedDelay(this::heartbeat, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void release() {
+        if (slot >= 0) {
+            redisTemplate.execute(workerIdLeaseScript, Collections.singletonList(this.leaseKey(slot)), token, "0");
+        }
+    }
+
+    private void heartbeat() {
+        try {
+            Long renewed = redisTemplate.execute(workerIdLeaseScript, Collections.singletonList(this.leaseKey(slot)), token, leaseSeconds + "");
+            if (renewed == null || renewed == 0) {
+                log.warn("[节点编号] 租约已失效, slot={}, 重新租借", slot);
+                this.acquire();
+            }
+        } catch (Exception e) {
+            log.error("[节点编号] 续期异常, slot={}", slot, e);
+        }
+    }
+
+    /**
+     * 从随机位置开始依次尝试，避免同时启动的节点争抢同一个编号
+     */
+    private void acquire() {
+        int start = ThreadLocalRandom.current().nextInt(IdGenerateUtil.WORKER_SLOTS);
+        for (int i = 0; i < IdGenerateUtil.WORKER_SLOTS; i++) {
+            int candidate = (start + i) % IdGenerateUtil.WORKER_SLOTS;
+            Boolean leased = redisTemplate.opsForValue().setIfAbsent(this.leaseKey(candidate), token, leaseSeconds, TimeUnit.SECONDS);
+            if (leased != null && leased) {
+                IdGenerateUtil.get().assignWorker(candidate);
+                slot = candidate;
+                log.info("[节点编号] 租借节点编号 slot={}", candidate);
+                return;
+            }
+        }
+        throw new IllegalStateException("no free worker id slot in " + IdGenerateUtil.WORKER_SLOTS);
+    }
+
+    private String leaseKey(int slot) {
+        return SeckillRedisKey.SECKILL_WORKER_ID_LEASE.join(slot + "");
+    }
+}
@@ -3,6 +3,8 @@ package cn.wolfcode.mapper;
 import cn.wolfcode.domain.OrderInfo;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
+
 /**
  * Created by wolfcode
  */
@@ -15,6 +17,14 @@ public interface OrderInfoMapper {
      */
     int insert(OrderInfo orderInfo);
 
+    /**
+     * 批量插入订单信息
+     *
+     * @param orderInfos
+     * @return
+     */
+    int insertBatch(@Param("orderInfos") List<OrderInfo> orderInfos);
+
     /**
      * 根据订单编号查找订单
      *
@@ -51,7 +61,33 @@ public interface OrderInfoMapper {
      */
     int changeRefundStatus(@Param("orderNo") String outTradeNo, @Param("status") Integer statusRefund);
 
+    /**
+     * 查询并锁定未支付的订单
+     *
+     * @param orderNos
+     * @return
+     */
+    List<OrderInfo> selectUnpaidForUpdate(@Param("orderNos") List<String> orderNos);
+
+    /**
+     * 将未支付的订单批量修改成超时取消状态
+     *
+     * @param orderNos
+     * @param status
+     * @return
+     */
+    int updateTimeoutBatch(@Param("orderNos") List<String> orderNos, @Param("status") Integer status);
+
     OrderInfo selectByUserIdAndSeckillId(@Param("userId") Long userId, @Param("seckillId") Long seckillId, @Param("time") Integer time);
 
     OrderInfo selectById(String orderNo);
+
+    /**
+     * 统计秒杀商品在一张分表中仍保留用户下单标识的订单数：排除手动取消/超时取消(取消时删除了下单标识)
+     *
+     * @param seckillId
+     * @param shard
+     * @return
+     */
+    long countFlaggedBySeckillId(@Param("seckillId") Long seckillId, @Param("shard") Integer shard);
 }
@@ -0,0 +1,45 @@
+package cn.wolfcode.mapper;
+
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单分表数据迁移，直接使用物理表名，不经过分表拦截器
+ */
+public interface OrderShardMigrationMapper {
+    /**
+     * 按源表结构创建分表
+     *
+     * @param source
+     * @param target
+     */
+    void createShardTable(@Param("source") String source, @Param("target") String target);
+
+    /**
+     * 按主键顺序分页读取主键和路由键
+     *
+     * @param table
+     * @param keyColumn
+     * @param routeColumn
+     * @param after 上一批最后一个主键，第一批为null
+     * @param limit
+     * @return k:主键 r:路由键
+     */
+    List<Map<String, Object>> selectKeys(@Param("table") String table, @Param("keyColumn") String keyColumn,
+                                         @Param("routeColumn") String routeColumn, @Param("after") Object after,
+                                         @Param("limit") int limit);
+
+    /**
+     * 在数据库内把一批行复制到分表，已存在的行以源表为准覆盖
+     *
+     * @param source
+     * @param target
+     * @param keyColumn
+     * @param keys
+     * @return
+     */
+    int copyRows(@Param("source") String source, @Param("target") String target,
+                 @Param("keyColumn") String keyColumn, @Param("keys") List<Object> keys);
+}
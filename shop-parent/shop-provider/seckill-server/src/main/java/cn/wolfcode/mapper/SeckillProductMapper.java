@@ -21,6 +21,15 @@ public interface SeckillProductMapper {
      */
     int decrStock(Long seckillId);
 
+    /**
+     * 对秒杀商品库存批量进行递减操作，库存不足时不更新
+     *
+     * @param seckillId
+     * @param count
+     * @return
+     */
+    int decrStockBatch(@Param("seckillId") Long seckillId, @Param("count") int count);
+
     /**
      * 对秒杀商品库存进行增加操作
      * @param seckillId
@@ -28,6 +37,15 @@ public interface SeckillProductMapper {
      */
     int incrStock(Long seckillId);
 
+    /**
+     * 对秒杀商品库存批量进行增加操作
+     *
+     * @param seckillId
+     * @param count
+     * @return
+     */
+    int incrStockBatch(@Param("seckillId") Long seckillId, @Param("count") int count);
+
     /**
      * 获取数据库中商品库存的数量
      * @param seckillId
@@ -0,0 +1,33 @@
+package cn.wolfcode.mq.listener;
+
+import cn.wolfcode.cache.TwoLevelCacheManager;
+import cn.wolfcode.mq.CacheEvictMessage;
+import cn.wolfcode.mq.MQConstant;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.annotation.MessageModel;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.springframework.stereotype.Component;
+
+
+@RocketMQMessageListener(
+        consumerGroup = MQConstant.CACHE_EVICT_CONSUMER_GROUP,
+        topic = MQConstant.CACHE_EVICT_TOPIC,
+        messageModel = MessageModel.BROADCASTING //广播模式，每个节点失效自己的本地缓存
+)
+@Component
+@Slf4j
+public class CacheEvictMessageListener implements RocketMQListener<CacheEvictMessage> {
+
+    private final TwoLevelCacheManager cacheManager;
+
+    public CacheEvictMessageListener(TwoLevelCacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public void onMessage(CacheEvictMessage msg) {
+        log.debug("[本地缓存失效] cacheName={}, key={}", msg.getCacheName(), msg.getKey());
+        cacheManager.onEvict(msg);
+    }
+}
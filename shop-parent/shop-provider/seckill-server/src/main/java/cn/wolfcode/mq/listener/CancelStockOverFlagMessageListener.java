@@ -1,7 +1,9 @@
 package cn.wolfcode.mq.listener;
 
+import cn.wolfcode.core.AdmittedUserFilter;
+import cn.wolfcode.core.SoldOutRegistry;
 import cn.wolfcode.mq.MQConstant;
-import cn.wolfcode.web.controller.OrderInfoController;
+import cn.wolfcode.mq.SoldOutMessage;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.spring.annotation.MessageModel;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
@@ -16,12 +18,26 @@ import org.springframework.stereotype.Component;
 )
 @Component
 @Slf4j
-public class CancelStockOverFlagMessageListener implements RocketMQListener<String> {
+public class CancelStockOverFlagMessageListener implements RocketMQListener<SoldOutMessage> {
+
+    private final SoldOutRegistry soldOutRegistry;
+    private final AdmittedUserFilter admittedUserFilter;
+
+    public CancelStockOverFlagMessageListener(SoldOutRegistry soldOutRegistry, AdmittedUserFilter admittedUserFilter) {
+        this.soldOutRegistry = soldOutRegistry;
+        this.admittedUserFilter = admittedUserFilter;
+    }
 
     @Override
-    public void onMessage(String msg) {
-        log.info("[取消本地标识]received msg for cancelling local sign,prepare to delete it:{}",msg);
-        Long seckillId = Long.parseLong(msg);
-        OrderInfoController.deleteKey(seckillId);
+    public void onMessage(SoldOutMessage msg) {
+        log.info("[取消本地标识]received msg for cancelling local sign,prepare to delete it:{},version:{}",msg.getSeckillId(),msg.getVersion());
+        soldOutRegistry.apply(msg.getSeckillId(), msg.getVersion(), false);
+        //用户下单标识已回滚，允许该用户重新抢购
+        if (msg.getUserPhone() != null) {
+            admittedUserFilter.remove(msg.getSeckillId(), msg.getUserPhone());
+        }
+        if (msg.getUserPhones() != null) {
+            msg.getUserPhones().forEach(phone -> admittedUserFilter.remove(msg.getSeckillId(), phone));
+        }
     }
 }
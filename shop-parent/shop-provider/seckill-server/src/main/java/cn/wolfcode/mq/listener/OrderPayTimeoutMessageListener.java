@@ -9,6 +9,9 @@ import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.springframework.stereotype.Component;
 
+/**
+ * 支付超时已改由PayTimeoutScheduler批量处理，保留该监听器消费升级前已经发出的延时消息
+ */
 @RocketMQMessageListener(
         consumerGroup = MQConstant.ORDER_PAY_TIMEOUT_CONSUMER_GROUP,
         topic = MQConstant.ORDER_PAY_TIMEOUT_TOPIC
@@ -1,6 +1,8 @@
 package cn.wolfcode.mq.listener;
 
 import cn.wolfcode.common.web.Result;
+import cn.wolfcode.core.OrderBatchCreator;
+import cn.wolfcode.core.PayTimeoutScheduler;
 import cn.wolfcode.domain.OrderInfo;
 import cn.wolfcode.mq.DefaultSendCallback;
 import cn.wolfcode.mq.MQConstant;
@@ -14,48 +16,51 @@ import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 @RocketMQMessageListener(
         consumerGroup = MQConstant.ORDER_PENDING_CONSUMER_GROUP,
         topic = MQConstant.ORDER_PENDING_TOPIC
 )
+@ConditionalOnProperty(name = "seckill.order.orderly", havingValue = "false", matchIfMissing = true)
 @Component
 @Slf4j
 public class OrderPendingMessageListener implements RocketMQListener<OrderMessage> {
 
     private final IOrderInfoService orderInfoService;
     private final RocketMQTemplate rocketMQTemplate;
+    private final OrderBatchCreator orderBatchCreator;
+    private final PayTimeoutScheduler payTimeoutScheduler;
 
-    public OrderPendingMessageListener(IOrderInfoService orderInfoService, RocketMQTemplate rocketMQTemplate) {
+    public OrderPendingMessageListener(IOrderInfoService orderInfoService, RocketMQTemplate rocketMQTemplate, OrderBatchCreator orderBatchCreator, PayTimeoutScheduler payTimeoutScheduler) {
         this.orderInfoService = orderInfoService;
         this.rocketMQTemplate = rocketMQTemplate;
+        this.orderBatchCreator = orderBatchCreator;
+        this.payTimeoutScheduler = payTimeoutScheduler;
     }
 
 
     @Override
     public void onMessage(OrderMessage message) {
         log.info("[create order] received the msg,preparing to creating order: {}", JSON.toJSONString(message));
+        //批量模式：交给批量创建线程，等待处理完成后再确认消息
+        if (orderBatchCreator.isEnabled()) {
+            orderBatchCreator.create(message);
+            return;
+        }
         OrderMQResult orderMQResult = new OrderMQResult();
         orderMQResult.setToken(message.getToken());
         try {
             /**
              * 5.本地事务：减DB库存+生成订单 @Transactional
-             * 6.订单创建成功发送延时消息
              */
-            OrderInfo orderInfo = orderInfoService.doSeckill(message.getUserPhone(), message.getSeckillId(), message.getTime());
+            OrderInfo orderInfo = orderInfoService.doSeckill(message.getUserPhone(), message.getSeckillId(), message.getTime(), message.getOrderNo());
             orderMQResult.setOrderNo(orderInfo.getOrderNo());
             //订单创建成功
             orderMQResult.setCode(Result.SUCCESS_CODE);
             orderMQResult.setMsg("order creating successfully");
-            //下单成功后  发送delay消息 检查订单支付状态 若超时未支付 直接取消订单 -- 回滚redis和MySQL的库存
             message.setOrderNo(orderInfo.getOrderNo());
-            Message<OrderMessage> orderMessage = MessageBuilder.withPayload(message).build();
-            rocketMQTemplate.asyncSend(MQConstant.ORDER_PAY_TIMEOUT_TOPIC,orderMessage,
-                    new DefaultSendCallback("CHECK STATUS:PAY TIMEOUT!"),5000,9);
-
         } catch (Exception e) {
             /**
              * 7.订单创建失败：补偿redis库存
@@ -63,7 +68,19 @@ public class OrderPendingMessageListener implements RocketMQListener<OrderMessag
             orderMQResult.setCode(SeckillCodeMsg.SECKILL_ERROR.getCode());
             orderMQResult.setMsg(SeckillCodeMsg.SECKILL_ERROR.getMsg());
             //创建失败,回补redis数量控制，删除用户下单标识（在哪），本地下单标识
-            orderInfoService.failedRollback(message);
+            if (!orderInfoService.failedRollback(message)) {
+                //消息重复投递，订单已经创建
+                orderMQResult.setOrderNo(message.getOrderNo());
+                orderMQResult.setCode(Result.SUCCESS_CODE);
+                orderMQResult.setMsg("order creating successfully");
+            }
+        }
+        /**
+         * 6.订单已存在(本次创建或重复投递)：幂等登记支付截止时间(时间轮+redis) 若超时未支付 批量取消订单 -- 回滚redis和MySQL的库存
+         * 事务已经提交，登记失败不能再回补库存：抛出异常由消息重新投递，再次登记
+         */
+        if (orderMQResult.getOrderNo() != null) {
+            payTimeoutScheduler.schedule(orderMQResult.getOrderNo());
         }
         //无论成功还是失败  都要返回订单创建结果消息
         rocketMQTemplate.asyncSend(MQConstant.ORDER_RESULT_TOPIC,orderMQResult,new DefaultSendCallback("order result"));
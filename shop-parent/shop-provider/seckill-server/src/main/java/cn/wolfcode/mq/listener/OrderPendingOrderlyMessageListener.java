@@ -0,0 +1,76 @@
+package cn.wolfcode.mq.listener;
+
+import cn.wolfcode.core.OrderBatchCreator;
+import cn.wolfcode.mq.MQConstant;
+import cn.wolfcode.mq.OrderMessage;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.spring.annotation.ConsumeMode;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.apache.rocketmq.spring.core.RocketMQPushConsumerLifecycleListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 顺序消费创建订单
+ * 生产端按seckillId选择队列，同一商品的订单只会被一个消费线程处理，扣减库存时不再争抢同一行锁；
+ * 每次从队列中拉取一批消息，按商品一次扣减库存+批量插入订单
+ */
+@RocketMQMessageListener(
+        consumerGroup = MQConstant.ORDER_PENDING_CONSUMER_GROUP,
+        topic = MQConstant.ORDER_PENDING_TOPIC,
+        consumeMode = ConsumeMode.ORDERLY
+)
+@ConditionalOnProperty(name = "seckill.order.orderly", havingValue = "true")
+@Component
+@Slf4j
+public class OrderPendingOrderlyMessageListener implements RocketMQListener<OrderMessage>, RocketMQPushConsumerLifecycleListener {
+
+    private final OrderBatchCreator orderBatchCreator;
+
+    @Value("${seckill.order.orderly-batch-size:16}")
+    private int batchSize;
+
+    public OrderPendingOrderlyMessageListener(OrderBatchCreator orderBatchCreator) {
+        this.orderBatchCreator = orderBatchCreator;
+    }
+
+    @Override
+    public void onMessage(OrderMessage message) {
+        orderBatchCreator.createAll(Collections.singletonList(message));
+    }
+
+    /**
+     * 替换默认的逐条顺序监听器，一次消费同一队列中的一批消息
+     */
+    @Override
+    public void prepareStart(DefaultMQPushConsumer consumer) {
+        consumer.setConsumeMessageBatchMaxSize(batchSize);
+        consumer.setMessageListener((MessageListenerOrderly) (msgs, context) -> {
+            List<OrderMessage> messages = new ArrayList<>(msgs.size());
+            for (MessageExt msg : msgs) {
+                messages.add(JSON.parseObject(new String(msg.getBody(), StandardCharsets.UTF_8), OrderMessage.class));
+            }
+            log.info("[create order] received {} msgs from queue {}, preparing to creating orders", messages.size(), context.getMessageQueue().getQueueId());
+            try {
+                orderBatchCreator.createAll(messages);
+                return ConsumeOrderlyStatus.SUCCESS;
+            } catch (Exception e) {
+                log.error("[create order] orderly batch failed, suspend queue a moment", e);
+                return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+            }
+        });
+        log.info("[create order] orderly consume enabled, batchSize:{}", batchSize);
+    }
+}
@@ -0,0 +1,33 @@
+package cn.wolfcode.mq.listener;
+
+import cn.wolfcode.core.OrderResultWaiters;
+import cn.wolfcode.mq.MQConstant;
+import cn.wolfcode.mq.OrderMQResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.annotation.MessageModel;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.springframework.stereotype.Component;
+
+
+@RocketMQMessageListener(
+        consumerGroup = MQConstant.ORDER_RESULT_POLL_CONSUMER_GROUP,
+        topic = MQConstant.ORDER_RESULT_TOPIC,
+        messageModel = MessageModel.BROADCASTING //广播模式，长轮询请求可能挂起在任意节点
+)
+@Component
+@Slf4j
+public class OrderResultPollMessageListener implements RocketMQListener<OrderMQResult> {
+
+    private final OrderResultWaiters orderResultWaiters;
+
+    public OrderResultPollMessageListener(OrderResultWaiters orderResultWaiters) {
+        this.orderResultWaiters = orderResultWaiters;
+    }
+
+    @Override
+    public void onMessage(OrderMQResult msg) {
+        log.debug("[订单结果长轮询] token={}, orderNo={}", msg.getToken(), msg.getOrderNo());
+        orderResultWaiters.complete(msg);
+    }
+}
@@ -0,0 +1,33 @@
+package cn.wolfcode.mq.listener;
+
+import cn.wolfcode.core.SoldOutRegistry;
+import cn.wolfcode.mq.MQConstant;
+import cn.wolfcode.mq.SoldOutMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.annotation.MessageModel;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.springframework.stereotype.Component;
+
+
+@RocketMQMessageListener(
+        consumerGroup = MQConstant.SECKILL_SOLD_OUT_CONSUMER_GROUP,
+        topic = MQConstant.SECKILL_SOLD_OUT_TOPIC,
+        messageModel = MessageModel.BROADCASTING //广播到每一个节点
+)
+@Component
+@Slf4j
+public class SoldOutMessageListener implements RocketMQListener<SoldOutMessage> {
+
+    private final SoldOutRegistry soldOutRegistry;
+
+    public SoldOutMessageListener(SoldOutRegistry soldOutRegistry) {
+        this.soldOutRegistry = soldOutRegistry;
+    }
+
+    @Override
+    public void onMessage(SoldOutMessage msg) {
+        log.info("[商品售罄标识]received sold out msg:{},version:{}",msg.getSeckillId(),msg.getVersion());
+        soldOutRegistry.apply(msg.getSeckillId(), msg.getVersion(), true);
+    }
+}
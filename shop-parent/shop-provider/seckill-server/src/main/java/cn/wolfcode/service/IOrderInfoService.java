@@ -10,6 +10,8 @@ import cn.wolfcode.mq.OrderMessage;
 import org.junit.jupiter.api.Order;
 import org.springframework.cache.annotation.CachePut;
 
+import java.util.List;
+
 /**
  * Created by wolfcode
  */
@@ -23,12 +25,24 @@ public interface IOrderInfoService {
 
     OrderInfo doSeckill(Long phone, Long seckillId, Integer time);
 
+    OrderInfo doSeckill(Long phone, Long seckillId, Integer time, String orderNo);
+
     OrderInfo selectByOrderNo(String orderNo);
 
-    void failedRollback(OrderMessage message);
+    List<OrderInfo> doSeckillBatch(Long seckillId, Integer time, List<Long> phones, List<String> orderNos);
+
+    //订单实际已经存在(消息重复投递)时不回滚，返回false
+    boolean failedRollback(OrderMessage message);
+
+    void failedRollbackBatch(List<OrderMessage> messages);
 
     void checkPayTimeout(OrderMessage orderMessage);
 
+    List<OrderInfo> expirePayTimeout(List<String> orderNos);
+
+    //秒杀商品仍保留用户下单标识的订单数(未付款/已付款/已退款，汇总所有分表)
+    long countFlaggedBySeckillId(Long seckillId);
+
     String onlinePay(String orderNo);
 
     void alipaySuccess(PayResult result);
@@ -17,7 +17,11 @@ public interface ISeckillProductService {
 
     void decrStockCount(Long id);
 
+    void decrStockCountBatch(Long id, int count);
+
     Long selectStockCountId(Long seckillId);
 
     void incrStockCount(Long seckillId);
+
+    void incrStockCountBatch(Long seckillId, int count);
 }
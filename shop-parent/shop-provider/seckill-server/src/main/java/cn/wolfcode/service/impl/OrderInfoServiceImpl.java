@@ -3,20 +3,23 @@ package cn.wolfcode.service.impl;
 import cn.wolfcode.common.domain.UserInfo;
 import cn.wolfcode.common.exception.BusinessException;
 import cn.wolfcode.common.web.Result;
+import cn.wolfcode.cache.OrderStateCache;
+import cn.wolfcode.core.SoldOutRegistry;
+import cn.wolfcode.core.StockCompensationLedger;
+import cn.wolfcode.core.StockPushPublisher;
+import cn.wolfcode.core.StockShardRouter;
 import cn.wolfcode.domain.*;
 import cn.wolfcode.feign.PaymentFeignApi;
 import cn.wolfcode.feign.fallback.IntegralFeignApi;
 import cn.wolfcode.mapper.OrderInfoMapper;
 import cn.wolfcode.mapper.PayLogMapper;
 import cn.wolfcode.mapper.RefundLogMapper;
-import cn.wolfcode.mq.DefaultSendCallback;
 import cn.wolfcode.mq.MQConstant;
 import cn.wolfcode.mq.OrderMessage;
-import cn.wolfcode.redis.SeckillRedisKey;
 import cn.wolfcode.service.IOrderInfoService;
 import cn.wolfcode.service.ISeckillProductService;
+import cn.wolfcode.sharding.OrderShardRouter;
 import cn.wolfcode.util.AssertUtils;
-import cn.wolfcode.util.IdGenerateUtil;
 import cn.wolfcode.web.msg.SeckillCodeMsg;
 import com.alibaba.fastjson.JSON;
 import io.seata.spring.annotation.GlobalTransactional;
@@ -24,23 +27,26 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.producer.LocalTransactionState;
 import org.apache.rocketmq.client.producer.TransactionSendResult;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
-import org.springframework.cache.annotation.CacheConfig;
-import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by wolfcode
  */
 @Slf4j
 @Service
-@CacheConfig(cacheNames = "orders")
 public class OrderInfoServiceImpl implements IOrderInfoService {
     private final ISeckillProductService seckillProductService;
     private final OrderInfoMapper orderInfoMapper;
@@ -50,8 +56,14 @@ public class OrderInfoServiceImpl implements IOrderInfoService {
     private final RocketMQTemplate rocketMQTemplate;
     private final PaymentFeignApi paymentFeignApi;
     private final IntegralFeignApi integralFeignApi;
+    private final StockShardRouter stockShardRouter;
+    private final SoldOutRegistry soldOutRegistry;
+    private final StockPushPublisher stockPushPublisher;
+    private final StockCompensationLedger stockCompensationLedger;
+    private final OrderStateCache orderStateCache;
+    private final OrderShardRouter orderShardRouter;
 
-    public OrderInfoServiceImpl(ISeckillProductService seckillProductService, OrderInfoMapper orderInfoMapper, StringRedisTemplate redisTemplate, PayLogMapper payLogMapper, RefundLogMapper refundLogMapper, RocketMQTemplate rocketMQTemplate, PaymentFeignApi paymentFeignApi, IntegralFeignApi integralFeignApi) {
+    public OrderInfoServiceImpl(ISeckillProductService seckillProductService, OrderInfoMapper orderInfoMapper, StringRedisTemplate redisTemplate, PayLogMapper payLogMapper, RefundLogMapper refundLogMapper, RocketMQTemplate rocketMQTemplate, PaymentFeignApi paymentFeignApi, IntegralFeignApi integralFeignApi, StockShardRouter stockShardRouter, SoldOutRegistry soldOutRegistry, StockPushPublisher stockPushPublisher, StockCompensationLedger stockCompensationLedger, OrderStateCache orderStateCache, OrderShardRouter orderShardRouter) {
         this.seckillProductService = seckillProductService;
         this.orderInfoMapper = orderInfoMapper;
         this.redisTemplate = redisTemplate;
@@ -60,6 +72,12 @@ public class OrderInfoServiceImpl implements IOrderInfoService {
         this.rocketMQTemplate = rocketMQTemplate;
         this.paymentFeignApi = paymentFeignApi;
         this.integralFeignApi = integralFeignApi;
+        this.stockShardRouter = stockShardRouter;
+        this.soldOutRegistry = soldOutRegistry;
+        this.stockPushPublisher = stockPushPublisher;
+        this.stockCompensationLedger = stockCompensationLedger;
+        this.orderStateCache = orderStateCache;
+        this.orderShardRouter = orderShardRouter;
     }
 
     @Override
@@ -75,22 +93,58 @@ public class OrderInfoServiceImpl implements IOrderInfoService {
     @Transactional(rollbackFor = Exception.class)
     @Override
     public OrderInfo doSeckill(Long phone, SeckillProductVo vo) {
+        return this.createOrder(phone, vo, null);
+    }
+
+    private OrderInfo createOrder(Long phone, SeckillProductVo vo, String orderNo) {
         // 1. 扣除秒杀商品库存
         seckillProductService.decrStockCount(vo.getId());//,vo.getTime()
         // 2. 创建秒杀订单并保存
-        OrderInfo orderInfo = this.buildOrderInfo(phone, vo);
+        OrderInfo orderInfo = this.buildOrderInfo(phone, vo, orderNo);
 
         // 3. 返回订单编号
         orderInfoMapper.insert(orderInfo);
+        orderStateCache.put(orderInfo);
         return orderInfo;
     }
-    @Cacheable(key = "'detail:'+#orderNo")
+    /**
+     * 同一商品的多个订单：一次扣减库存 + 批量插入订单，任意一步失败整体回滚
+     */
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public List<OrderInfo> doSeckillBatch(Long seckillId, Integer time, List<Long> phones, List<String> orderNos) {
+        SeckillProductVo sp = seckillProductService.selectByIdAndTime(seckillId, time);
+        seckillProductService.decrStockCountBatch(seckillId, phones.size());
+        List<OrderInfo> orderInfos = new ArrayList<>(phones.size());
+        for (int i = 0; i < phones.size(); i++) {
+            orderInfos.add(this.buildOrderInfo(phones.get(i), sp, orderNos.get(i)));
+        }
+        //批量插入按分表分组
+        Map<Integer, List<OrderInfo>> shards = new LinkedHashMap<>();
+        for (OrderInfo orderInfo : orderInfos) {
+            shards.computeIfAbsent(orderShardRouter.shardOfOrderNo(orderInfo.getOrderNo()), k -> new ArrayList<>()).add(orderInfo);
+        }
+        shards.values().forEach(orderInfoMapper::insertBatch);
+        orderStateCache.putAll(orderInfos);
+        return orderInfos;
+    }
+
+    /**
+     * 先查订单状态缓存，未命中查询MySQL后回填(回填经过状态序号比较，不会覆盖更新的状态)
+     */
     @Override
     public OrderInfo selectByOrderNo(String orderNo){
-        return orderInfoMapper.selectById(orderNo);
+        OrderInfo orderInfo = orderStateCache.get(orderNo);
+        if (orderInfo != null) {
+            return orderInfo;
+        }
+        orderInfo = orderInfoMapper.selectById(orderNo);
+        if (orderInfo != null) {
+            orderStateCache.put(orderInfo);
+        }
+        return orderInfo;
     }
 
-    @CachePut(key = "'detail:'+ #result.orderNo")
     @Transactional(rollbackFor = Exception.class)
     @Override
     public OrderInfo doSeckill(Long phone, Long seckillId,Integer time) {
@@ -98,37 +152,160 @@ public class OrderInfoServiceImpl implements IOrderInfoService {
         return this.doSeckill(phone,sp);
     }
 
+    /**
+     * 使用准入时预先分配的订单号创建订单，订单号同时作为库存补偿的幂等键
+     */
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public OrderInfo doSeckill(Long phone, Long seckillId, Integer time, String orderNo) {
+        SeckillProductVo sp = seckillProductService.selectByIdAndTime(seckillId, time);
+        return this.createOrder(phone, sp, orderNo);
+    }
+
+
 
+    @Override
+    public long countFlaggedBySeckillId(Long seckillId) {
+        long count = 0;
+        for (int shard = 0; shard < orderShardRouter.getTableCount(); shard++) {
+            count += orderInfoMapper.countFlaggedBySeckillId(seckillId, shard);
+        }
+        return count;
+    }
 
     @Override
-    public void failedRollback(OrderMessage message) {
+    public boolean failedRollback(OrderMessage message) {
+        //消息重复投递：订单已经创建成功(订单号在准入时分配)，不能回补
+        if (message.getOrderNo() != null && orderInfoMapper.find(message.getOrderNo()) != null) {
+            log.info("[create order] order already exists, skip rollback: {}", message.getOrderNo());
+            return false;
+        }
         //1.rollback:数据库不需要回补，只有redis需要--这里DB的回滚由事务操作
-        this.RollBackRedisStock(message.getSeckillId(),message.getTime());
+        Integer shard = message.getStockShard() != null ? message.getStockShard()
+                : stockShardRouter.homeShard(message.getTime(), message.getSeckillId(), message.getUserPhone());
+        this.RollBackRedisStock(message.getSeckillId(),message.getTime(),shard,message.getOrderNo());
         //2.delete user sign
-        String userOrderFlag = SeckillRedisKey.SECKILL_ORDER_HASH.join(message.getSeckillId() + "");
+        String userOrderFlag = stockShardRouter.orderFlagKey(message.getTime(), message.getSeckillId(), message.getUserPhone());
         redisTemplate.opsForHash().delete(userOrderFlag,message.getUserPhone()+"");
-        //3.delete local sign ==> 通过mq发送广播消息 让每一个服务
-        rocketMQTemplate.asyncSend(MQConstant.CANCEL_SECKILL_OVER_SIGE_TOPIC,message.getSeckillId(),new DefaultSendCallback("取消本地标识"));
+        //3.delete local sign ==> 通过mq发送广播消息 让每一个服务(同时清除本地已下单用户标识)
+        soldOutRegistry.cancelSoldOut(message.getSeckillId(), message.getUserPhone());
+        stockPushPublisher.markDirty(message.getTime(), message.getSeckillId());
+        return true;
+    }
+
+    /**
+     * 批量回滚redis：按商品合并
+     * 1.同一库存分片一次补偿脚本(按订单号幂等)，同一下单标识key一次 HDEL 多个用户(一次pipeline发送)
+     * 2.每个商品只广播一次取消售罄，携带该商品下所有需要清除本地下单标识的用户
+     */
+    @Override
+    public void failedRollbackBatch(List<OrderMessage> messages) {
+        Map<Long, List<OrderMessage>> bySeckillId = new LinkedHashMap<>();
+        for (OrderMessage message : messages) {
+            bySeckillId.computeIfAbsent(message.getSeckillId(), k -> new ArrayList<>()).add(message);
+        }
+        //seckillId => {库存分片 => 订单号}
+        Map<Long, Map<Integer, List<String>>> compensations = new LinkedHashMap<>();
+        //用户下单标识key => 用户
+        Map<String, List<String>> orderFlags = new LinkedHashMap<>();
+        for (List<OrderMessage> group : bySeckillId.values()) {
+            for (OrderMessage message : group) {
+                int shard = message.getStockShard() != null ? message.getStockShard()
+                        : stockShardRouter.homeShard(message.getTime(), message.getSeckillId(), message.getUserPhone());
+                if (message.getOrderNo() == null) {
+                    this.RollBackRedisStock(message.getSeckillId(), message.getTime(), shard, null);
+                } else {
+                    compensations.computeIfAbsent(message.getSeckillId(), k -> new LinkedHashMap<>())
+                            .computeIfAbsent(shard, k -> new ArrayList<>()).add(message.getOrderNo());
+                }
+                orderFlags.computeIfAbsent(stockShardRouter.orderFlagKey(message.getTime(), message.getSeckillId(), message.getUserPhone()),
+                        k -> new ArrayList<>()).add(message.getUserPhone() + "");
+            }
+        }
+        compensations.forEach((seckillId, shards) -> {
+            Integer time = bySeckillId.get(seckillId).get(0).getTime();
+            shards.forEach((shard, orderNos) -> stockCompensationLedger.compensate(time, shard, seckillId, orderNos));
+        });
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            orderFlags.forEach((key, phones) -> conn.hDel(key, phones.toArray(new String[0])));
+            return null;
+        });
+        bySeckillId.forEach((seckillId, group) -> {
+            List<Long> phones = new ArrayList<>(group.size());
+            for (OrderMessage message : group) {
+                phones.add(message.getUserPhone());
+            }
+            soldOutRegistry.cancelSoldOut(seckillId, phones);
+            stockPushPublisher.markDirty(group.get(0).getTime(), seckillId);
+        });
     }
 
-    private void RollBackRedisStock(Long seckillId,Integer time) {
-        Long stockCount = seckillProductService.selectStockCountId(seckillId);
-        String hashKey = SeckillRedisKey.SECKILL_STOCK_COUNT_HASH.join(time + "");
-        redisTemplate.opsForHash().put(hashKey, seckillId+"",stockCount+"");
+    private void RollBackRedisStock(Long seckillId,Integer time,int shard,String orderNo) {
+        //在扣减的分片上回补一件，不能用DB库存覆盖：库存已拆分到多个分片，其余节点也可能还持有本地租借的库存
+        if (orderNo != null) {
+            //按订单号记账，同一订单重复回滚只补偿一次
+            stockCompensationLedger.compensate(time, shard, seckillId, Collections.singletonList(orderNo));
+            return;
+        }
+        //升级前发出的消息没有预分配订单号
+        String hashKey = stockShardRouter.stockKey(time, shard);
+        redisTemplate.opsForHash().increment(hashKey, seckillId+"", 1);
     }
 
     @Transactional(rollbackFor = Exception.class)
     @Override
     public void checkPayTimeout(OrderMessage orderMessage) {
-        //1.基于订单编号 查询订单对象
-        //2.未支付，则取消订单
-        int row = orderInfoMapper.changePayStatus(orderMessage.getOrderNo(), OrderInfo.STATUS_CANCEL, OrderInfo.PAY_TYPE_ONLINE);
-        if (row>0){
-            //3.mysql该秒杀商品库存加1
-            seckillProductService.incrStockCount(orderMessage.getSeckillId());
-            //4.失败订单信息回滚：redis库存删除用户下单标识 删除本地标识
-            this.failedRollback(orderMessage);
+        //未支付则取消订单，库存回补/标识回滚与批量超时取消走同一条路径
+        this.expirePayTimeout(Collections.singletonList(orderMessage.getOrderNo()));
+    }
+
+    /**
+     * 批量取消超时未支付的订单
+     * 1.锁定仍未支付的订单，一条update批量修改为超时取消
+     * 2.mysql库存按商品合并回补：每个商品一次 stock_count + n
+     * 3.redis库存/用户下单标识按商品合并回滚，每个商品一次取消售罄广播
+     *
+     * @return 实际被取消的订单
+     */
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public List<OrderInfo> expirePayTimeout(List<String> orderNos) {
+        //按分表分组，每张表一次select for update + 一次update
+        List<OrderInfo> unpaid = new ArrayList<>(orderNos.size());
+        for (List<String> group : orderShardRouter.groupByShard(orderNos).values()) {
+            List<OrderInfo> shardUnpaid = orderInfoMapper.selectUnpaidForUpdate(group);
+            if (shardUnpaid.isEmpty()) {
+                continue;
+            }
+            List<String> unpaidNos = new ArrayList<>(shardUnpaid.size());
+            for (OrderInfo orderInfo : shardUnpaid) {
+                unpaidNos.add(orderInfo.getOrderNo());
+            }
+            orderInfoMapper.updateTimeoutBatch(unpaidNos, OrderInfo.STATUS_TIMEOUT);
+            unpaid.addAll(shardUnpaid);
+        }
+        if (unpaid.isEmpty()) {
+            return unpaid;
         }
+        Map<Long, Integer> units = new LinkedHashMap<>();
+        for (OrderInfo orderInfo : unpaid) {
+            units.merge(orderInfo.getSeckillId(), 1, Integer::sum);
+        }
+        for (OrderInfo orderInfo : unpaid) {
+            orderInfo.setStatus(OrderInfo.STATUS_TIMEOUT);
+        }
+        orderStateCache.putAll(unpaid);
+        units.forEach(seckillProductService::incrStockCountBatch);
+        List<OrderMessage> messages = new ArrayList<>(unpaid.size());
+        for (OrderInfo orderInfo : unpaid) {
+            OrderMessage message = new OrderMessage(orderInfo.getSeckillTime(), orderInfo.getSeckillId(), null, orderInfo.getUserId());
+            message.setOrderNo(orderInfo.getOrderNo());
+            messages.add(message);
+        }
+        this.failedRollbackBatch(messages);
+        log.info("[支付超时] 批量取消订单 count={}, products={}", unpaid.size(), units);
+        return unpaid;
     }
 
     @Override
@@ -156,8 +333,9 @@ public class OrderInfoServiceImpl implements IOrderInfoService {
         //2.判断订单信息是否正确
         AssertUtils.isTrue(orderInfo.getSeckillPrice().toString().equals(result.getTotalAmount()),"支付金额有误");
         //3.更新订单状态  保证幂等性
-        int row = orderInfoMapper.changePayStatus(result.getTradeNo(), OrderInfo.STATUS_ACCOUNT_PAID, OrderInfo.PAY_TYPE_ONLINE);
+        int row = orderInfoMapper.changePayStatus(result.getOutTradeNo(), OrderInfo.STATUS_ACCOUNT_PAID, OrderInfo.PAY_TYPE_ONLINE);
         AssertUtils.isTrue(row>0,"订单状态修改失败");
+        this.cachePaid(orderInfo, OrderInfo.PAY_TYPE_ONLINE);
         //4.记录支付日志
         PayLog payLog = new PayLog();
         payLog.setPayType(OrderInfo.PAY_TYPE_ONLINE);
@@ -215,11 +393,17 @@ public class OrderInfoServiceImpl implements IOrderInfoService {
         //4.更新订单状态为已退款
         int row = orderInfoMapper.changeRefundStatus(orderInfo.getOrderNo(), OrderInfo.STATUS_REFUND);
         AssertUtils.isTrue(row>0,"退款失败，更新状态异常");
+        orderInfo.setStatus(OrderInfo.STATUS_REFUND);
+        orderStateCache.put(orderInfo);
         //5.库存回补(MySQL+Redis)
         seckillProductService.incrStockCount(orderInfo.getSeckillId());
-        this.RollBackRedisStock(orderInfo.getSeckillId(), orderInfo.getSeckillTime());
-        //6.删除本地下单标识
-        rocketMQTemplate.asyncSend(MQConstant.CANCEL_SECKILL_OVER_SIGE_TOPIC, orderInfo.getSeckillId(),new DefaultSendCallback("取消本地标识"));
+        //订单未记录扣减分片，回补到用户主分片，总数不变
+        this.RollBackRedisStock(orderInfo.getSeckillId(), orderInfo.getSeckillTime(),
+                stockShardRouter.homeShard(orderInfo.getSeckillTime(), orderInfo.getSeckillId(), orderInfo.getUserId()),
+                orderInfo.getOrderNo());
+        //6.删除本地售罄标识
+        soldOutRegistry.cancelSoldOut(orderInfo.getSeckillId());
+        stockPushPublisher.markDirty(orderInfo.getSeckillTime(), orderInfo.getSeckillId());
         //7.创建退款日志 保存
         RefundLog refundLog = new RefundLog();
         refundLog.setRefundReason("用户申请退款"+ orderInfo.getProductName());
@@ -255,6 +439,7 @@ public class OrderInfoServiceImpl implements IOrderInfoService {
         //发起支付
         int row = orderInfoMapper.changePayStatus(orderNo, OrderInfo.STATUS_ACCOUNT_PAID, OrderInfo.PAY_TYPE_INTERGRAL);
         AssertUtils.isTrue(row>0,"订单状态修改失败");
+        this.cachePaid(orderInfo, OrderInfo.PAY_TYPE_INTERGRAL);
         PayLog payLog = new PayLog();
         payLog.setPayType(OrderInfo.PAY_TYPE_INTERGRAL);
         payLog.setTotalAmount(vo.getValue()+"");
@@ -276,14 +461,21 @@ public class OrderInfoServiceImpl implements IOrderInfoService {
         return refundLogMapper.selectByOrderNo(orderNo);
     }
 
+    private void cachePaid(OrderInfo orderInfo, int payType) {
+        orderInfo.setStatus(OrderInfo.STATUS_ACCOUNT_PAID);
+        orderInfo.setPayType(payType);
+        orderInfo.setPayDate(new Date());
+        orderStateCache.put(orderInfo);
+    }
+
     //private OrderInfo buildOrderInfo(UserInfo userInfo, SeckillProductVo vo) {
-    private OrderInfo buildOrderInfo(Long phone, SeckillProductVo vo) {
+    private OrderInfo buildOrderInfo(Long phone, SeckillProductVo vo, String orderNo) {
         Date now = new Date();
         OrderInfo orderInfo = new OrderInfo();
         orderInfo.setCreateDate(now);
         orderInfo.setDeliveryAddrId(1L);
         orderInfo.setIntergral(vo.getIntergral());
-        orderInfo.setOrderNo(IdGenerateUtil.get().nextId() + "");//id generator=>雪花算法==>保证唯一性（如果按1，2，3排序 分表之后数据库自增 id就不唯一）
+        orderInfo.setOrderNo(orderNo != null ? orderNo : orderShardRouter.newOrderNo(phone));//订单号末尾带分表基因//id generator=>雪花算法==>保证唯一性（如果按1，2，3排序 分表之后数据库自增 id就不唯一）
         orderInfo.setPayType(OrderInfo.PAY_TYPE_ONLINE);
         orderInfo.setProductCount(1);
         orderInfo.setProductId(vo.getProductId());
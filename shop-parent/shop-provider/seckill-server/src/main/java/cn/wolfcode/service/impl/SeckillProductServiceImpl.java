@@ -3,6 +3,8 @@ package cn.wolfcode.service.impl;
 import cn.wolfcode.common.exception.BusinessException;
 import cn.wolfcode.common.web.CodeMsg;
 import cn.wolfcode.common.web.Result;
+import cn.wolfcode.core.CatalogAssembler;
+import cn.wolfcode.core.SessionWindowTable;
 import cn.wolfcode.domain.Product;
 import cn.wolfcode.domain.SeckillProduct;
 import cn.wolfcode.domain.SeckillProductVo;
@@ -14,9 +16,7 @@ import cn.wolfcode.util.AssertUtils;
 import cn.wolfcode.util.IdGenerateUtil;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.cache.annotation.CacheConfig;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.RedisScript;
@@ -40,17 +40,26 @@ public class SeckillProductServiceImpl implements ISeckillProductService {
 //    private RocketMQTemplate rocketMQTemplate;
     private final RedisScript<Boolean> redisScript;
     private final ScheduledExecutorService scheduledExecutorService;
+    private final SessionWindowTable sessionWindowTable;
+    private final CatalogAssembler catalogAssembler;
 
-    public SeckillProductServiceImpl(SeckillProductMapper seckillProductMapper, StringRedisTemplate redisTemplate, ProductFeignApi productFeignApi, RedisScript<Boolean> redisScript, ScheduledExecutorService scheduledExecutorService) {
+    public SeckillProductServiceImpl(SeckillProductMapper seckillProductMapper, StringRedisTemplate redisTemplate, ProductFeignApi productFeignApi, RedisScript<Boolean> redisScript, ScheduledExecutorService scheduledExecutorService, SessionWindowTable sessionWindowTable, CatalogAssembler catalogAssembler) {
         this.seckillProductMapper = seckillProductMapper;
         this.redisTemplate = redisTemplate;
         this.productFeignApi = productFeignApi;
         this.redisScript = redisScript;
         this.scheduledExecutorService = scheduledExecutorService;
+        this.sessionWindowTable = sessionWindowTable;
+        this.catalogAssembler = catalogAssembler;
     }
 
     @Override
     public List<SeckillProductVo> selectTodayListByTime(Integer time) {
+        //同一场次的并发加载合并为一次
+        return catalogAssembler.load(time, () -> this.loadTodayListByTime(time));
+    }
+
+    private List<SeckillProductVo> loadTodayListByTime(Integer time) {
         // 1. 调用秒杀服务接口, 基于今天的时间, 查询今天的所有秒杀商品数据--mybatis+xml
         List<SeckillProduct> todayList = seckillProductMapper.queryCurrentlySeckillProduct(time);
         // 2. 遍历秒杀商品列表, 得到商品 id 列表
@@ -70,32 +79,18 @@ public class SeckillProductServiceImpl implements ISeckillProductService {
             throw new BusinessException(new CodeMsg(result.getCode(), result.getMsg()));
         }
 
-        List<Product> products = result.getData();
-
-        // 4. 遍历秒杀商品列表, 将商品对象与秒杀商品对象聚合到一起
+        // 4. 商品按id建索引, 将商品对象与秒杀商品对象聚合到一起
         // List<SeckillProduct> => List<SeckillProductVo>
-        List<SeckillProductVo> productVoList = todayList.stream()
-                .map(sp -> {
-                    SeckillProductVo vo = new SeckillProductVo();
-                    BeanUtils.copyProperties(sp, vo);
-
-                    List<Product> list = products.stream().filter(p -> sp.getProductId().equals(p.getId())).collect(Collectors.toList());
-                    if (list.size() > 0) {
-                        Product product = list.get(0);
-                        BeanUtils.copyProperties(product, vo);
-                    }
-                    vo.setId(sp.getId());//单个商品有可能参与多次秒杀 为保证唯一性 得是秒杀商品id
-
-                    return vo;
-                }) // Stream<SeckillProductVo>
-                .collect(Collectors.toList());
+        List<SeckillProductVo> productVoList = catalogAssembler.assemble(todayList, result.getData());
+        //定时任务每天重新加载场次时，同步刷新场次时间窗口
+        sessionWindowTable.reload(productVoList);
 
         return productVoList;
     }
 
     @Override
     public List<SeckillProductVo> selectTodayListByTimeFromRedis(Integer time) {
-        String key = SeckillRedisKey.SECKILL_PRODUCT_LIST.join(time + "");
+        String key = SeckillRedisKey.SECKILL_PRODUCT_LIST.joinTag(time + "");
         List<String> stringList = redisTemplate.opsForList().range(key, 0, -1);
 
         if (stringList == null || stringList.size() == 0) {
@@ -107,7 +102,8 @@ public class SeckillProductServiceImpl implements ISeckillProductService {
     }
 
     @Override
-    @Cacheable(key = "'selectByIdAndTime:' + #seckillId")//2025/8/17 --origin:key = "'selectByIdAndTime:' +#time+':' + #seckillId"
+    //sync：未命中时走Cache.get(key, valueLoader)回填，同一节点只回源一次，且回填不广播L1失效
+    @Cacheable(key = "'selectByIdAndTime:' + #seckillId", sync = true)//2025/8/17 --origin:key = "'selectByIdAndTime:' +#time+':' + #seckillId"
     public SeckillProductVo selectByIdAndTime(Long seckillId, Integer time) {
         SeckillProduct seckillProduct = seckillProductMapper.selectByIdAndTime(seckillId, time);
 
@@ -116,24 +112,26 @@ public class SeckillProductServiceImpl implements ISeckillProductService {
             throw new BusinessException(new CodeMsg(result.getCode(), result.getMsg()));
         }
 
-        Product product = result.getData().get(0);
-
-        SeckillProductVo vo = new SeckillProductVo();
-        // 先将商品的属性 copy 到 vo 对象中
-        BeanUtils.copyProperties(product, vo);
-
-        // 再将秒杀商品的属性 copy 到 vo 对象中, 并覆盖 id 属性
-        BeanUtils.copyProperties(seckillProduct, vo);
+        // 商品与秒杀商品的属性合并到 vo 对象中, id 为秒杀商品id
+        SeckillProductVo vo = catalogAssembler.toVo(seckillProduct, result.getData().get(0));
+        //缓存商品时预先计算场次时间窗口
+        sessionWindowTable.register(vo);
         return vo;
     }
     //optimistic lock
-    @CacheEvict(key = "'selectByIdAndTime:'  + #id")
+    //缓存的商品信息不包含实时库存，扣减库存不再失效缓存(实时库存见LiveStockCounter)
     @Override
     public void decrStockCount(Long id){
         int row = seckillProductMapper.decrStock(id);
         AssertUtils.isTrue(row>0,"understock!!!");
     }
 
+    @Override
+    public void decrStockCountBatch(Long id, int count) {
+        int row = seckillProductMapper.decrStockBatch(id, count);
+        AssertUtils.isTrue(row > 0, "understock!!!");
+    }
+
     @Override
     public Long selectStockCountId(Long seckillId) {
         return seckillProductMapper.selectStockCountById(seckillId);
@@ -143,6 +141,11 @@ public class SeckillProductServiceImpl implements ISeckillProductService {
     public void incrStockCount(Long seckillId) {
         seckillProductMapper.incrStock(seckillId);
     }
+
+    @Override
+    public void incrStockCountBatch(Long seckillId, int count) {
+        seckillProductMapper.incrStockBatch(seckillId, count);
+    }
     // pessimistic lock
     /*
     1.利用redis setnx的原子性命令实现分布式锁
@@ -152,7 +155,6 @@ public class SeckillProductServiceImpl implements ISeckillProductService {
     5.为避免业务没执行完，锁就过期了，引入watchdog实现锁自动续期
      */
 
-    @CacheEvict(key = "'selectByIdAndTime:'  + #id")//2025/8/17加
     //@CacheEvict(key = "'selectByIdAndTime:' + #time + ':' + #id")
     @Override
     public void decrStockCount(Long id, Integer time) {
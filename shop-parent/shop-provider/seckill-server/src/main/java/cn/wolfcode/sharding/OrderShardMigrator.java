@@ -0,0 +1,102 @@
+package cn.wolfcode.sharding;
+
+import cn.wolfcode.mapper.OrderShardMigrationMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 订单分表数据迁移工具
+ * 1.按目标分表数(seckill.sharding.migrate.table-count)创建分表，按主键顺序分批流式读取源表
+ * 2.每批按分表规则分组后在数据库内 replace into 分表 select * from 源表，不把整行读到应用中
+ * 3.订单按订单号路由，支付/退款日志按out_trade_no(订单号)路由，与TableShardingInterceptor规则一致
+ * 使用方式：分表开启前，在一个节点上配置 seckill.sharding.migrate.enabled=true 启动，可重复执行；
+ * 源表在切换前都是准确数据，最后一次迁移完成后再把 seckill.sharding.table-count 改为目标分表数
+ */
+@Slf4j
+@Component
+public class OrderShardMigrator {
+    //逻辑表, 主键列, 路由列
+    private static final String[][] TABLES = {
+            {"t_order_info", "order_no", "order_no"},
+            {"t_pay_log", "id", "out_trade_no"},
+            {"t_refund_log", "id", "out_trade_no"}
+    };
+
+    private final OrderShardMigrationMapper migrationMapper;
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    @Value("${seckill.sharding.migrate.enabled:false}")
+    private boolean enabled;
+    @Value("${seckill.sharding.migrate.table-count:1}")
+    private int tableCount;
+    @Value("${seckill.sharding.migrate.batch-size:1000}")
+    private int batchSize;
+
+    public OrderShardMigrator(OrderShardMigrationMapper migrationMapper, ScheduledExecutorService scheduledExecutorService) {
+        this.migrationMapper = migrationMapper;
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (tableCount <= 1 || OrderShardRouter.GENE_COUNT % tableCount != 0) {
+            log.error("[分表迁移] 目标分表数必须是{}的约数且大于1: {}", OrderShardRouter.GENE_COUNT, tableCount);
+            return;
+        }
+        scheduledExecutorService.execute(this::migrateAll);
+    }
+
+    private void migrateAll() {
+        for (String[] table : TABLES) {
+            try {
+                this.migrate(table[0], table[1], table[2]);
+            } catch (Exception e) {
+                log.error("[分表迁移] 迁移失败 table={}", table[0], e);
+                return;
+            }
+        }
+    }
+
+    private void migrate(String table, String keyColumn, String routeColumn) {
+        for (int shard = 0; shard < tableCount; shard++) {
+            migrationMapper.createShardTable(table, table + "_" + shard);
+        }
+        Object after = null;
+        long copied = 0;
+        while (true) {
+            List<Map<String, Object>> rows = migrationMapper.selectKeys(table, keyColumn, routeColumn, after, batchSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+            Map<Integer, List<Object>> groups = new LinkedHashMap<>();
+            for (Map<String, Object> row : rows) {
+                int shard = this.shardOf(String.valueOf(row.get("r")));
+                groups.computeIfAbsent(shard, k -> new ArrayList<>()).add(row.get("k"));
+            }
+            groups.forEach((shard, keys) -> migrationMapper.copyRows(table, table + "_" + shard, keyColumn, keys));
+            copied += rows.size();
+            after = rows.get(rows.size() - 1).get("k");
+            log.info("[分表迁移] table={}, copied={}, last={}", table, copied, after);
+        }
+        log.info("[分表迁移] 完成 table={}, rows={}, tableCount={}", table, copied, tableCount);
+    }
+
+    /**
+     * 与OrderShardRouter相同的规则，按目标分表数计算
+     */
+    private int shardOf(String orderNo) {
+        return OrderShardRouter.geneOfOrderNo(orderNo) % tableCount;
+    }
+}
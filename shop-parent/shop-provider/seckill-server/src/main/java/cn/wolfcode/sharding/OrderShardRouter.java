@@ -0,0 +1,88 @@
+package cn.wolfcode.sharding;
+
+import cn.wolfcode.util.SegmentIdAllocator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单分表路由
+ * 1.分表基因：gene = user_id % 1024，同一用户的订单落在同一张表
+ * 2.订单号 = 19位id(号段分配，单调递增) + 4位基因(共23位)，按订单号查询时直接从末尾取出基因路由，不需要查映射表
+ * 3.表序号 = gene % table-count，table-count 必须是1024的约数，扩容时基因不变只需要迁移数据
+ * 4.升级前的订单号(不超过19位)没有基因，以订单号本身 % 1024 作为基因，迁移工具按同一规则搬迁
+ * table-count=1 时不分表，SQL不做改写
+ */
+@Component
+public class OrderShardRouter {
+    public static final int GENE_COUNT = 1024;
+    private static final int ID_DIGITS = 19;
+    private static final int GENE_DIGITS = 4;
+
+    private final SegmentIdAllocator orderIdAllocator;
+
+    @Value("${seckill.sharding.table-count:1}")
+    private int tableCount;
+
+    public OrderShardRouter(SegmentIdAllocator orderIdAllocator) {
+        this.orderIdAllocator = orderIdAllocator;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (tableCount < 1 || GENE_COUNT % tableCount != 0) {
+            throw new IllegalStateException("seckill.sharding.table-count must be a divisor of " + GENE_COUNT + ": " + tableCount);
+        }
+    }
+
+    public boolean isEnabled() {
+        return tableCount > 1;
+    }
+
+    public int getTableCount() {
+        return tableCount;
+    }
+
+    /**
+     * 生成带分表基因的订单号
+     */
+    public String newOrderNo(Long userId) {
+        return String.format("%0" + ID_DIGITS + "d%0" + GENE_DIGITS + "d", orderIdAllocator.nextId(), gene(userId));
+    }
+
+    public int shardOfUser(Long userId) {
+        return gene(userId) % tableCount;
+    }
+
+    public int shardOfOrderNo(String orderNo) {
+        return geneOfOrderNo(orderNo) % tableCount;
+    }
+
+    static int geneOfOrderNo(String orderNo) {
+        if (orderNo.length() == ID_DIGITS + GENE_DIGITS) {
+            return Integer.parseInt(orderNo.substring(ID_DIGITS));
+        }
+        return (int) Math.floorMod(Long.parseLong(orderNo), (long) GENE_COUNT);
+    }
+
+    /**
+     * 批量操作按分表分组，每组在同一张表中执行
+     */
+    public Map<Integer, List<String>> groupByShard(Collection<String> orderNos) {
+        Map<Integer, List<String>> groups = new LinkedHashMap<>();
+        for (String orderNo : orderNos) {
+            groups.computeIfAbsent(this.shardOfOrderNo(orderNo), k -> new ArrayList<>()).add(orderNo);
+        }
+        return groups;
+    }
+
+    private static int gene(Long userId) {
+        return (int) Math.floorMod(userId, (long) GENE_COUNT);
+    }
+}
@@ -0,0 +1,115 @@
+package cn.wolfcode.sharding;
+
+import cn.wolfcode.domain.OrderInfo;
+import cn.wolfcode.domain.PayLog;
+import cn.wolfcode.domain.RefundLog;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分表拦截器：在prepare之前把逻辑表名改写为分表名
+ * 1.只改写订单、支付日志、退款日志三个mapper的语句
+ * 2.从参数中取分表键：订单号(含基因)、订单对象、日志的out_trade_no(即订单号)、user_id；遍历所有分表的语句直接传shard
+ * 3.批量参数(orderNos/orderInfos)必须落在同一张表，调用方先按分表分组，跨表时直接报错
+ */
+@Component
+@Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}))
+public class TableShardingInterceptor implements Interceptor {
+    private static final Set<String> SHARDED_MAPPERS = new HashSet<>(Arrays.asList(
+            "cn.wolfcode.mapper.OrderInfoMapper", "cn.wolfcode.mapper.PayLogMapper", "cn.wolfcode.mapper.RefundLogMapper"));
+    private static final Pattern LOGIC_TABLES = Pattern.compile("\\b(t_order_info|t_pay_log|t_refund_log)\\b");
+
+    private final OrderShardRouter orderShardRouter;
+
+    public TableShardingInterceptor(OrderShardRouter orderShardRouter) {
+        this.orderShardRouter = orderShardRouter;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (!orderShardRouter.isEnabled()) {
+            return invocation.proceed();
+        }
+        MetaObject meta = SystemMetaObject.forObject(invocation.getTarget());
+        //被多个插件代理时取出最内层的StatementHandler
+        while (meta.hasGetter("h")) {
+            meta = SystemMetaObject.forObject(meta.getValue("h.target"));
+        }
+        MappedStatement ms = (MappedStatement) meta.getValue("delegate.mappedStatement");
+        String namespace = ms.getId().substring(0, ms.getId().lastIndexOf('.'));
+        if (!SHARDED_MAPPERS.contains(namespace)) {
+            return invocation.proceed();
+        }
+        BoundSql boundSql = (BoundSql) meta.getValue("delegate.boundSql");
+        int shard = this.resolveShard(ms.getId(), boundSql.getParameterObject());
+        Matcher matcher = LOGIC_TABLES.matcher(boundSql.getSql());
+        meta.setValue("delegate.boundSql.sql", matcher.replaceAll("$1_" + shard));
+        return invocation.proceed();
+    }
+
+    private int resolveShard(String statementId, Object parameter) {
+        if (parameter instanceof Map) {
+            Map<?, ?> params = (Map<?, ?>) parameter;
+            //按分表遍历的统计语句直接指定分表序号
+            if (params.containsKey("shard") && params.get("shard") != null) {
+                return (Integer) params.get("shard");
+            }
+            for (String name : new String[]{"orderNo", "orderNos", "orderInfos", "userId"}) {
+                if (params.containsKey(name) && params.get(name) != null) {
+                    return this.resolveShard(statementId, params.get(name));
+                }
+            }
+        } else if (parameter instanceof Collection) {
+            Integer shard = null;
+            for (Object item : (Collection<?>) parameter) {
+                int current = this.resolveShard(statementId, item);
+                if (shard != null && shard != current) {
+                    throw new IllegalStateException("cross-shard batch is not supported: " + statementId);
+                }
+                shard = current;
+            }
+            if (shard != null) {
+                return shard;
+            }
+        } else if (parameter instanceof String) {
+            return orderShardRouter.shardOfOrderNo((String) parameter);
+        } else if (parameter instanceof Long) {
+            return orderShardRouter.shardOfUser((Long) parameter);
+        } else if (parameter instanceof OrderInfo) {
+            return orderShardRouter.shardOfOrderNo(((OrderInfo) parameter).getOrderNo());
+        } else if (parameter instanceof PayLog) {
+            return orderShardRouter.shardOfOrderNo(((PayLog) parameter).getOutTradeNo());
+        } else if (parameter instanceof RefundLog) {
+            return orderShardRouter.shardOfOrderNo(((RefundLog) parameter).getOutTradeNo());
+        }
+        throw new IllegalStateException("no sharding key found: " + statementId);
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return target instanceof StatementHandler ? Plugin.wrap(target, this) : target;
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+}
@@ -0,0 +1,174 @@
+package cn.wolfcode.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * long => long 的并发map，开放寻址，不对key/value装箱
+ * 1.读操作无锁，写操作按分段加锁，不同分段的写互不影响
+ * 2.value为0表示不存在，因此删除即写0，key不会被物理删除，需要时整体clear
+ * 3.key不能为0(秒杀商品id/手机号都大于0)
+ */
+public class ConcurrentLongLongMap {
+    private static final int SEGMENT_COUNT = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    public ConcurrentLongLongMap() {
+        this(256);
+    }
+
+    public ConcurrentLongLongMap(int initialCapacity) {
+        int segmentCapacity = tableSizeFor(Math.max(4, initialCapacity / SEGMENT_COUNT));
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * 获取key对应的值，不存在返回0
+     */
+    public long get(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != 0;
+    }
+
+    public void put(long key, long value) {
+        update(key, (current, x) -> x, value);
+    }
+
+    public void remove(long key) {
+        put(key, 0);
+    }
+
+    /**
+     * 在分段锁内计算新值：newValue = fn(oldValue, x)，oldValue不存在时为0
+     *
+     * @return 新值
+     */
+    public long update(long key, LongBinaryOperator fn, long x) {
+        if (key == 0) {
+            throw new IllegalArgumentException("key can't be 0");
+        }
+        long hash = hash(key);
+        return segmentFor(hash).update(key, hash, fn, x);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 60) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static long hash(long key) {
+        //murmur3 fmix64
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int n = 1;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private static class Table {
+        private final AtomicLongArray keys;
+        private final AtomicLongArray values;
+        private final int mask;
+
+        Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * key所在的槽位，不存在时返回第一个空槽位
+         */
+        int indexOf(long key, long hash) {
+            int index = (int) hash & mask;
+            while (true) {
+                long k = keys.get(index);
+                if (k == key || k == 0) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+    }
+
+    private static class Segment {
+        private final int initialCapacity;
+        private volatile Table table;
+        private int size;
+
+        Segment(int capacity) {
+            this.initialCapacity = capacity;
+            this.table = new Table(capacity);
+        }
+
+        long get(long key, long hash) {
+            Table t = this.table;
+            int index = t.indexOf(key, hash);
+            return t.keys.get(index) == key ? t.values.get(index) : 0;
+        }
+
+        synchronized long update(long key, long hash, LongBinaryOperator fn, long x) {
+            Table t = this.table;
+            int index = t.indexOf(key, hash);
+            boolean exists = t.keys.get(index) == key;
+            long value = fn.applyAsLong(exists ? t.values.get(index) : 0, x);
+            if (!exists) {
+                if (value == 0) {
+                    return 0;
+                }
+                if (size + 1 > (t.mask + 1) * LOAD_FACTOR) {
+                    t = this.resize(t);
+                    index = t.indexOf(key, hash);
+                }
+                size++;
+                //先写value再写key，无锁读看到key时value一定可见
+                t.values.set(index, value);
+                t.keys.set(index, key);
+                return value;
+            }
+            t.values.set(index, value);
+            return value;
+        }
+
+        synchronized void clear() {
+            this.table = new Table(initialCapacity);
+            this.size = 0;
+        }
+
+        private Table resize(Table old) {
+            Table t = new Table((old.mask + 1) << 1);
+            for (int i = 0; i <= old.mask; i++) {
+                long k = old.keys.get(i);
+                if (k != 0) {
+                    int index = t.indexOf(k, hash(k));
+                    t.values.set(index, old.values.get(i));
+                    t.keys.set(index, k);
+                }
+            }
+            this.table = t;
+            return t;
+        }
+    }
+}
@@ -13,21 +13,37 @@ public class DateUtil {
      * @return
      */
     public static boolean isLegalTime(Date startDate, int time) {
+        long now = System.currentTimeMillis();
+        // 判断如果当前时间 >= 开始时间 && < 结束时间
+        return now >= getStartTime(startDate, time) && now < getEndTime(startDate, time);
+    }
+
+    /**
+     * 根据日期和场次计算秒杀开始时间戳
+     *
+     * @param startDate
+     * @param time
+     * @return
+     */
+    public static long getStartTime(Date startDate, int time) {
         Calendar c = Calendar.getInstance();
         c.setTime(startDate);
         c.set(Calendar.HOUR_OF_DAY, time);
-        // 开始的时间戳
-        long start = c.getTime().getTime();
-
-        // 当前时间戳
-        long now = new Date().getTime();
+        return c.getTimeInMillis();
+    }
 
-        // 为开始时间 + 2小时
+    /**
+     * 根据日期和场次计算秒杀结束时间戳(开始时间 + 2小时)
+     *
+     * @param startDate
+     * @param time
+     * @return
+     */
+    public static long getEndTime(Date startDate, int time) {
+        Calendar c = Calendar.getInstance();
+        c.setTime(startDate);
+        c.set(Calendar.HOUR_OF_DAY, time);
         c.add(Calendar.HOUR_OF_DAY, 2);
-
-        // 获取到开始时间两小时后的时间戳 == 结束时间
-        long end = c.getTime().getTime();
-        // 判断如果当前时间 >= 开始时间 && <= 结束时间
-        return now >= start && now < end;
+        return c.getTimeInMillis();
     }
 }
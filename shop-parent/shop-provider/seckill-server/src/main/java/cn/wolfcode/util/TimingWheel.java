@@ -0,0 +1,132 @@
+package cn.wolfcode.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 分层时间轮
+ * 1.第一层每格tickMs，共wheelSize格；超出本层范围的任务放入上一层(每格 = 下一层一圈)，按需创建
+ * 2.只有非空的格子按到期时间进入优先队列，推进时钟时不需要空转每一格
+ * 3.上层格子到期后其中的任务重新放入时间轮，逐层下降，直到第一层到期
+ * 线程安全：所有操作在同一把锁内完成，add/advance都是O(1)~O(log 非空格子数)
+ */
+public class TimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final Bucket<T>[] buckets;
+    private final PriorityQueue<Bucket<T>> queue;
+    private long currentTime;
+    private TimingWheel<T> overflow;
+    private int size;
+
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this(tickMs, wheelSize, startMs, new PriorityQueue<>(Comparator.comparingLong(b -> b.expiration)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private TimingWheel(long tickMs, int wheelSize, long startMs, PriorityQueue<Bucket<T>> queue) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.currentTime = startMs - startMs % tickMs;
+        this.queue = queue;
+        this.buckets = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new Bucket<>();
+        }
+    }
+
+    /**
+     * 添加任务
+     *
+     * @return 已经到期(不足一格)返回false，由调用方立即处理
+     */
+    public synchronized boolean add(T item, long deadline) {
+        if (this.add(new Entry<>(item, deadline))) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 推进时钟到now，返回所有到期的任务
+     */
+    public synchronized List<T> advance(long now) {
+        List<T> expired = new ArrayList<>();
+        Bucket<T> bucket;
+        while ((bucket = queue.peek()) != null && bucket.expiration <= now) {
+            queue.poll();
+            this.advanceClock(bucket.expiration);
+            for (Entry<T> entry : bucket.flush()) {
+                //上层格子中的任务下降到下层，已经到期的返回
+                if (!this.add(entry)) {
+                    expired.add(entry.item);
+                    size--;
+                }
+            }
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private boolean add(Entry<T> entry) {
+        if (entry.deadline < currentTime + tickMs) {
+            return false;
+        }
+        if (entry.deadline < currentTime + interval) {
+            long virtualId = entry.deadline / tickMs;
+            Bucket<T> bucket = buckets[(int) (virtualId % wheelSize)];
+            bucket.entries.add(entry);
+            long expiration = virtualId * tickMs;
+            //格子被复用(上一圈已经flush)时重新进入优先队列
+            if (bucket.expiration != expiration) {
+                bucket.expiration = expiration;
+                queue.add(bucket);
+            }
+            return true;
+        }
+        if (overflow == null) {
+            overflow = new TimingWheel<>(interval, wheelSize, currentTime, queue);
+        }
+        return overflow.add(entry);
+    }
+
+    private void advanceClock(long time) {
+        if (time >= currentTime + tickMs) {
+            currentTime = time - time % tickMs;
+            if (overflow != null) {
+                overflow.advanceClock(currentTime);
+            }
+        }
+    }
+
+    private static class Bucket<T> {
+        private List<Entry<T>> entries = new ArrayList<>();
+        private long expiration = -1L;
+
+        List<Entry<T>> flush() {
+            List<Entry<T>> flushed = entries;
+            entries = new ArrayList<>();
+            expiration = -1L;
+            return flushed;
+        }
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final long deadline;
+
+        Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+}
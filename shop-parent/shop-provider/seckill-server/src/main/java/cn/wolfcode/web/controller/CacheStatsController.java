@@ -0,0 +1,27 @@
+package cn.wolfcode.web.controller;
+
+import cn.wolfcode.cache.TwoLevelCacheManager;
+import cn.wolfcode.common.web.Result;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+
+@RestController
+@RequestMapping("/cache")
+public class CacheStatsController {
+    private final TwoLevelCacheManager cacheManager;
+
+    public CacheStatsController(TwoLevelCacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * 当前节点二级缓存命中统计
+     */
+    @RequestMapping("/stats")
+    public Result<Map<String, Map<String, Object>>> stats() {
+        return Result.success(cacheManager.stats());
+    }
+}
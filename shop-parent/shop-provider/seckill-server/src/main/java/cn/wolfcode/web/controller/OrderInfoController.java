@@ -5,51 +5,67 @@ import cn.wolfcode.common.exception.BusinessException;
 import cn.wolfcode.common.web.Result;
 import cn.wolfcode.common.web.anno.RequireLogin;
 import cn.wolfcode.common.web.resolver.RequestUser;
+import cn.wolfcode.core.AdmittedUserFilter;
+import cn.wolfcode.core.OrderResultWaiters;
+import cn.wolfcode.core.SeckillAdmission;
+import cn.wolfcode.core.SessionWindowTable;
+import cn.wolfcode.core.SoldOutRegistry;
+import cn.wolfcode.core.StockAllotmentEngine;
+import cn.wolfcode.core.StockPushPublisher;
 import cn.wolfcode.domain.OrderInfo;
 import cn.wolfcode.domain.SeckillProductVo;
 import cn.wolfcode.mq.DefaultSendCallback;
 import cn.wolfcode.mq.MQConstant;
+import cn.wolfcode.mq.OrderMQResult;
 import cn.wolfcode.mq.OrderMessage;
 import cn.wolfcode.redis.CommonRedisKey;
-import cn.wolfcode.redis.SeckillRedisKey;
 import cn.wolfcode.service.IOrderInfoService;
 import cn.wolfcode.service.ISeckillProductService;
-import cn.wolfcode.util.AssertUtils;
+import cn.wolfcode.sharding.OrderShardRouter;
 import cn.wolfcode.web.msg.SeckillCodeMsg;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 
 @RestController //Rest API controller
 @RequestMapping("/order")
 @Slf4j
 public class OrderInfoController {
-    /*
-    标记已经sold out的商品
-     */
-    private static final Map<Long,Boolean> STOCK_OVER_FLOW_MAP = new ConcurrentHashMap<>();//线程安全性
-
     private final ISeckillProductService seckillProductService;
     private final StringRedisTemplate redisTemplate;
     private final IOrderInfoService orderInfoService;
     private final RocketMQTemplate rocketMQTemplate;
+    private final SeckillAdmission seckillAdmission;
+    private final SoldOutRegistry soldOutRegistry;
+    private final AdmittedUserFilter admittedUserFilter;
+    private final SessionWindowTable sessionWindowTable;
+    private final StockAllotmentEngine stockAllotmentEngine;
+    private final StockPushPublisher stockPushPublisher;
+    private final OrderResultWaiters orderResultWaiters;
+    private final OrderShardRouter orderShardRouter;
+    //按seckillId选择队列，配合顺序消费
+    @Value("${seckill.order.orderly:false}")
+    private boolean orderly;
 
-    public OrderInfoController(ISeckillProductService seckillProductService, StringRedisTemplate redisTemplate, IOrderInfoService orderInfoService,RocketMQTemplate rocketMQTemplate){
+    public OrderInfoController(ISeckillProductService seckillProductService, StringRedisTemplate redisTemplate, IOrderInfoService orderInfoService,RocketMQTemplate rocketMQTemplate,SeckillAdmission seckillAdmission,SoldOutRegistry soldOutRegistry,StockAllotmentEngine stockAllotmentEngine,AdmittedUserFilter admittedUserFilter,SessionWindowTable sessionWindowTable,StockPushPublisher stockPushPublisher,OrderResultWaiters orderResultWaiters,OrderShardRouter orderShardRouter){
         this.seckillProductService = seckillProductService;
         this.redisTemplate = redisTemplate;
         this.orderInfoService = orderInfoService;
         this.rocketMQTemplate = rocketMQTemplate;
-    }
-    public static void deleteKey(Long key){
-        STOCK_OVER_FLOW_MAP.remove(key);
+        this.seckillAdmission = seckillAdmission;
+        this.soldOutRegistry = soldOutRegistry;
+        this.admittedUserFilter = admittedUserFilter;
+        this.sessionWindowTable = sessionWindowTable;
+        this.stockPushPublisher = stockPushPublisher;
+        this.stockAllotmentEngine = stockAllotmentEngine;
+        this.orderResultWaiters = orderResultWaiters;
+        this.orderShardRouter = orderShardRouter;
     }
 
     @RequireLogin
@@ -64,6 +80,17 @@ public class OrderInfoController {
         return Result.success(orderInfo);
     }
 
+    /**
+     * 订单结果长轮询(websocket未连接时的降级方案)
+     * 请求挂起后释放servlet线程，订单结果到达或超时后再由异步派发写回响应
+     * 超时返回ORDER_RESULT_PENDING，客户端继续轮询
+     */
+    @RequireLogin
+    @GetMapping("/result")
+    public DeferredResult<Result<OrderMQResult>> pollResult(@RequestHeader("token") String token){
+        return orderResultWaiters.poll(token);
+    }
+
     /**
      * 优化前:
      * QPS:
@@ -79,14 +106,18 @@ public class OrderInfoController {
                                @RequestUser UserInfo userInfo,
                                @RequestHeader("token") String token){
         /**
-         * 1.本地内存标识STOCK_OVER_FLOW_MAP
-         * 2.重复下单标识redis Hash
+         * 1.集群售罄标识SoldOutRegistry
+         * 2.本地已下单用户过滤AdmittedUserFilter
+         * 3.redis准入脚本(重复下单标识+库存预减)
          */
-           //判断库存是否已经卖完了 如果已经卖完 直接返回异常
-           Boolean flag = STOCK_OVER_FLOW_MAP.get(seckillId);
-           if(flag!=null && flag){
+           //判断库存是否已经卖完了 如果已经卖完 直接返回异常(本节点还有租借的库存时继续售卖)
+           if(soldOutRegistry.isSoldOut(seckillId) && stockAllotmentEngine.available(seckillId) <= 0){
                return Result.error(SeckillCodeMsg.SECKILL_STOCK_OVER);
            }
+           //本节点已确认该用户下过单(redis中存在下单标识)，重复点击直接拒绝
+           if(admittedUserFilter.contains(seckillId, userInfo.getPhone())){
+               return Result.error(SeckillCodeMsg.REPEAT_SECKILL);
+           }
            //synchronized (this){加这里 锁力度太大
            //@RequestHeader("token") String token
            //1.基于token查询当前用户信息
@@ -95,42 +126,59 @@ public class OrderInfoController {
            if(sp == null){
                return Result.error(SeckillCodeMsg.REMOTE_DATA_ERROR);
            }
-           //3.判断当前时间是否在秒杀时间范围内
-           boolean range = this.betweenSecKillTime(sp);
+           //3.判断当前时间是否在秒杀时间范围内(预先计算好的场次窗口)
+           boolean range = sessionWindowTable.isOpen(sp);
            if(!range){
                return Result.error(SeckillCodeMsg.OUT_OF_SECKILL_TIME_ERROR);
            }
 
-           //5.判断用户是否已经下过订单--
-           String userOrderFlag = SeckillRedisKey.SECKILL_ORDER_HASH.join(
-                   seckillId + "");
-           Long orderCount = redisTemplate.opsForHash().increment(
-                   userOrderFlag, userInfo.getPhone() + "", 1);
-           //OrderInfo orderInfo = orderInfoService.selectByUserIdAndSeckillId(userInfo.getPhone(),seckillId,time);
-           if(orderCount>1){
-               return Result.error(SeckillCodeMsg.REPEAT_SECKILL);
-           }
-           String orderNum = null;
-
+           /**
+            * 4.redis准入：重复下单校验+原子预减库存+记录用户下单标识
+            * 5.异步发送MQ消息，创建订单
+            */
            try {
-               /**
-                * 3.redis原子预减
-                * 4.异步发送MQ消息，创建订单
-                */
-               //4.判断库存是否充足--redis原子预减操作
-               String hashKey = SeckillRedisKey.SECKILL_STOCK_COUNT_HASH.join(time + "");
-               Long remain = redisTemplate.opsForHash().increment(hashKey, seckillId + "", -1);
-               AssertUtils.isTrue(remain>=0,"sold out!");
+               //准入前分配订单号：创建订单与失败补偿使用同一个订单号，补偿按订单号幂等
+               //号段申请失败时还没有扣减库存、写入下单标识，直接返回错误即可
+               String orderNo = orderShardRouter.newOrderNo(userInfo.getPhone());
+               SeckillAdmission.AdmissionResult admission = seckillAdmission.admit(sp, userInfo.getPhone());
+               //判断用户是否已经下过订单
+               if (admission.isRepeat()) {
+                   admittedUserFilter.add(seckillId, userInfo.getPhone());
+                   return Result.error(SeckillCodeMsg.REPEAT_SECKILL);
+               }
+               //库存不够时 标记当前商品并广播到所有节点，未写入用户标识，无需回滚
+               if (!admission.isAdmitted()) {
+                   soldOutRegistry.markSoldOut(seckillId);
+                   stockPushPublisher.markDirty(time, seckillId);
+                   return Result.error(SeckillCodeMsg.SECKILL_STOCK_OVER);
+               }
                //6.发送mq异步消息，创建
-               rocketMQTemplate.asyncSend(MQConstant.ORDER_PENDING_TOPIC,
-                       new OrderMessage(time,seckillId,token,userInfo.getPhone()),
-                       new DefaultSendCallback("create order"));
+               OrderMessage message = new OrderMessage(time, seckillId, token, userInfo.getPhone());
+               message.setStockShard(admission.getShard());
+               message.setOrderNo(orderNo);
+               try {
+                   //刚好抢到最后一件，提前广播售罄
+                   if (admission.isExhausted()) {
+                       soldOutRegistry.markSoldOut(seckillId);
+                   }
+                   admittedUserFilter.add(seckillId, userInfo.getPhone());
+                   //库存变化，合并后推送给订阅该场次的客户端
+                   stockPushPublisher.markDirty(time, seckillId);
+                   if (orderly) {
+                       //同一商品的订单发送到同一队列，由一个消费线程串行创建
+                       rocketMQTemplate.asyncSendOrderly(MQConstant.ORDER_PENDING_TOPIC, message, seckillId + "",
+                               new DefaultSendCallback("create order"));
+                   } else {
+                       rocketMQTemplate.asyncSend(MQConstant.ORDER_PENDING_TOPIC, message,
+                               new DefaultSendCallback("create order"));
+                   }
+               } catch (RuntimeException e) {
+                   //已经扣减库存、写入下单标识但下单消息没有发出：回补库存、删除标识，用户可以重新抢购
+                   orderInfoService.failedRollback(message);
+                   throw e;
+               }
                return Result.success("creating....");
            } catch (BusinessException e) {
-               //库存不够时 直接标记当前商品
-               STOCK_OVER_FLOW_MAP.put(seckillId,true);
-               //将用户重复下单标识删除
-               redisTemplate.opsForHash().delete(userOrderFlag,userInfo.getPhone()+"");
                return Result.error(e.getCodeMsg());
            }catch (Exception e){
                e.printStackTrace();
@@ -138,23 +186,6 @@ public class OrderInfoController {
            return Result.defaultError();
     }
 
-    private boolean betweenSecKillTime(SeckillProductVo sp){
-        Calendar instance = Calendar.getInstance();
-        instance.setTime(sp.getStartDate());
-        //get hour
-        instance.set(Calendar.HOUR_OF_DAY,sp.getTime());
-        //start time
-        Date startTime = instance.getTime();
-        //end time
-        instance.add(Calendar.HOUR_OF_DAY,2);
-        Date endTime = instance.getTime();
-
-        //now
-        long now = System.currentTimeMillis();
-        //start < now < end
-
-        return startTime.getTime() <=now  &&  now<endTime.getTime();
-    }
     private UserInfo getUserByToken(String token){
         return JSON.parseObject(redisTemplate.opsForValue().get(CommonRedisKey.USER_TOKEN.getRealKey(token)), UserInfo.class);
     }
@@ -1,10 +1,19 @@
 package cn.wolfcode.web.controller;
 
 import cn.wolfcode.common.web.Result;
+import cn.wolfcode.core.CatalogSnapshot;
+import cn.wolfcode.core.LiveStockCounter;
 import cn.wolfcode.domain.SeckillProductVo;
 import cn.wolfcode.service.ISeckillProductService;
+import cn.wolfcode.util.AssertUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -17,14 +26,37 @@ import java.util.List;
 @Slf4j
 public class SeckillProductController {
     private final ISeckillProductService seckillProductService;
+    private final LiveStockCounter liveStockCounter;
+    private final CatalogSnapshot catalogSnapshot;
 
-    public SeckillProductController(ISeckillProductService seckillProductService) {
+    public SeckillProductController(ISeckillProductService seckillProductService, LiveStockCounter liveStockCounter, CatalogSnapshot catalogSnapshot) {
         this.seckillProductService = seckillProductService;
+        this.liveStockCounter = liveStockCounter;
+        this.catalogSnapshot = catalogSnapshot;
     }
 
+    /**
+     * 列表页直接返回预先序列化的快照，支持gzip与ETag/304
+     */
     @RequestMapping("/queryByTime")
-    public Result<List<SeckillProductVo>> queryByTime(Integer time) {
-        return Result.success(seckillProductService.selectTodayListByTimeFromRedis(time));
+    public ResponseEntity<byte[]> queryByTime(Integer time,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        AssertUtils.notNull(time, "场次不能为空");
+        CatalogSnapshot.Snapshot snapshot = catalogSnapshot.get(time);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(snapshot.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (snapshot.getEtag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.getEtag()).build();
+        }
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(snapshot.getGzip());
+        }
+        return builder.contentType(MediaType.APPLICATION_JSON).body(snapshot.getIdentity());
     }
 
     @RequestMapping("/selectTodayListByTime")
@@ -34,7 +66,8 @@ public class SeckillProductController {
 
     @RequestMapping("/find")
     public Result<SeckillProductVo> findById(Integer time, Long seckillId) {
-        return Result.success(seckillProductService.selectByIdAndTime(seckillId, time));
+        //缓存中的商品信息不可修改，返回带实时库存的副本
+        return Result.success(liveStockCounter.withCurrentCount(seckillProductService.selectByIdAndTime(seckillId, time)));
     }
 
 }
@@ -19,4 +19,5 @@ public class SeckillCodeMsg extends CodeMsg {
     public static final SeckillCodeMsg PAY_SERVER_ERROR = new SeckillCodeMsg(500205, "支付服务繁忙，稍后再试");
     public static final SeckillCodeMsg REFUND_ERROR = new SeckillCodeMsg(500206, "退款失败，请联系管理员");
     public static final SeckillCodeMsg INTERGRAL_SERVER_ERROR = new SeckillCodeMsg(500207, "操作积分失败");
+    public static final SeckillCodeMsg ORDER_RESULT_PENDING = new SeckillCodeMsg(500210, "订单创建中，请稍后再查询");
 }
@@ -0,0 +1,15 @@
+--order state hash:seckillOrderState:orderNo => {v:rank,s:status,d:order json}
+local stateKey = KEYS[1]
+--rank of the new status in the order state machine
+local rank = tonumber(ARGV[1])
+local status = ARGV[2]
+local data = ARGV[3]
+local ttl = tonumber(ARGV[4])
+--only move forward:a late write of an earlier state is ignored
+local current = tonumber(redis.call("HGET", stateKey, "v"))
+if (current ~= nil and current >= rank) then
+    return 0
+end
+redis.call("HMSET", stateKey, "v", rank, "s", status, "d", data)
+redis.call("EXPIRE", stateKey, ttl)
+return 1
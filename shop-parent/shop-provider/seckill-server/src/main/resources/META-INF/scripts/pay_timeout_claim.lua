@@ -0,0 +1,10 @@
+--pay timeout zset:seckillPayTimeout => {orderNo:deadline}
+local timeoutKey = KEYS[1]
+--only the caller that removes the member owns it,returns the claimed orderNos
+local claimed = {}
+for i = 1, #ARGV do
+    if (redis.call("ZREM", timeoutKey, ARGV[i]) == 1) then
+        claimed[#claimed + 1] = ARGV[i]
+    end
+end
+return claimed
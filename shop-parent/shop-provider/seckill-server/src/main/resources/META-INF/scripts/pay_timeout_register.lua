@@ -0,0 +1,13 @@
+--pay timeout zset:seckillPayTimeout => {orderNo:deadline}
+local timeoutKey = KEYS[1]
+--deadline in millis
+local deadline = ARGV[1]
+--register only orders that are not in the zset yet(ZADD NX),redelivered messages keep the first deadline
+local added = 0
+for i = 2, #ARGV do
+    if (redis.call("ZSCORE", timeoutKey, ARGV[i]) == false) then
+        redis.call("ZADD", timeoutKey, deadline, ARGV[i])
+        added = added + 1
+    end
+end
+return added
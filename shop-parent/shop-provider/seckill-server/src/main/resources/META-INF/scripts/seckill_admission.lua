@@ -0,0 +1,21 @@
+--user order flag hash:seckillOrderHash:{seckillId}
+local orderKey = KEYS[1]
+--session stock hash:seckillStockCount:{time}
+local stockKey = KEYS[2]
+--user phone
+local phone = ARGV[1]
+--seckill product id
+local seckillId = ARGV[2]
+--repeat order:user flag already exists
+if (redis.call("HEXISTS", orderKey, phone) == 1) then
+    return -2
+end
+--sold out:stock missing or used up,nothing is written
+local stock = tonumber(redis.call("HGET", stockKey, seckillId))
+if (stock == nil or stock <= 0) then
+    return -1
+end
+--record user flag and decrement stock together
+redis.call("HSET", orderKey, phone, 1)
+--return remaining stock
+return redis.call("HINCRBY", stockKey, seckillId, -1)
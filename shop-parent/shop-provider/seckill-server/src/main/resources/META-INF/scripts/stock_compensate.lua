@@ -0,0 +1,20 @@
+--compensation ledger:seckillStockCompensation:{time:shard} => {orderNo:seckillId}
+local ledgerKey = KEYS[1]
+--session stock hash of the same shard:seckillStockCount:{time:shard}
+local stockKey = KEYS[2]
+--seckill product id
+local seckillId = ARGV[1]
+--ledger ttl in seconds
+local ttl = tonumber(ARGV[2])
+--each order gives back exactly one unit,orders already in the ledger are skipped
+local applied = 0
+for i = 3, #ARGV do
+    if (redis.call("HSETNX", ledgerKey, ARGV[i], seckillId) == 1) then
+        applied = applied + 1
+    end
+end
+if (applied > 0) then
+    redis.call("HINCRBY", stockKey, seckillId, applied)
+end
+redis.call("EXPIRE", ledgerKey, ttl)
+return applied
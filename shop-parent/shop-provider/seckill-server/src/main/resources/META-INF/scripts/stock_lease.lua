@@ -0,0 +1,14 @@
+--session stock hash:seckillStockCount:{time}
+local stockKey = KEYS[1]
+--seckill product id
+local seckillId = ARGV[1]
+--units wanted by this node
+local batch = tonumber(ARGV[2])
+local stock = tonumber(redis.call("HGET", stockKey, seckillId))
+if (stock == nil or stock <= 0) then
+    return 0
+end
+--lease at most the remaining stock
+local leased = math.min(stock, batch)
+redis.call("HINCRBY", stockKey, seckillId, -leased)
+return leased
@@ -0,0 +1,16 @@
+--worker id lease:seckillWorkerId:{slot} => node token
+local leaseKey = KEYS[1]
+--token of the node that acquired the lease
+local token = ARGV[1]
+--new ttl in seconds,0 means release
+local ttl = tonumber(ARGV[2])
+--only the holder can renew or release,returns 0 when the lease has expired or been taken by another node
+if (redis.call("GET", leaseKey) ~= token) then
+    return 0
+end
+if (ttl > 0) then
+    redis.call("EXPIRE", leaseKey, ttl)
+else
+    redis.call("DEL", leaseKey)
+end
+return 1
@@ -0,0 +1,181 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.domain.SeckillProductVo;
+import cn.wolfcode.redis.SeckillRedisKey;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 秒杀准入并发测试：在嵌入式redis上执行真实的准入脚本
+ * 1万个调用方同时抢购，成功数不超过库存，库存不会扣成负数，同一用户只能成功一次
+ */
+public class SeckillAdmissionConcurrencyTest {
+    private static final int CALLERS = 10000;
+    private static final int THREADS = 64;
+    private static final Integer TIME = 10;
+    private static final Long SECKILL_ID = 1L;
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private SeckillAdmission admission;
+    private StockShardRouter stockShardRouter;
+
+    @BeforeClass
+    public static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = RedisServer.builder().port(port).setting("bind 127.0.0.1").build();
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterClass
+    public static void stopRedis() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        stockShardRouter = new StockShardRouter(redisTemplate);
+        //关闭本地库存分配：每次准入都执行redis脚本
+        StockAllotmentEngine stockAllotmentEngine = Mockito.mock(StockAllotmentEngine.class);
+        admission = new SeckillAdmission(redisTemplate, script("seckill_admission.lua"), script("stock_lease.lua"), stockShardRouter, stockAllotmentEngine);
+    }
+
+    @After
+    public void tearDown() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.flushAll();
+            return null;
+        });
+    }
+
+    @Test
+    public void singleShardNeverOversells() throws Exception {
+        this.warmUp(1, 100);
+        List<SeckillAdmission.AdmissionResult> results = this.race(i -> 13000000000L + i);
+        this.assertSold(results, 100, 1);
+    }
+
+    @Test
+    public void shardedStockNeverOversells() throws Exception {
+        //主分片耗尽后从兄弟分片扣减，总成功数仍等于总库存
+        this.warmUp(4, 250);
+        List<SeckillAdmission.AdmissionResult> results = this.race(i -> 13000000000L + i);
+        this.assertSold(results, 1000, 4);
+    }
+
+    @Test
+    public void samePhoneAdmittedOnce() throws Exception {
+        this.warmUp(4, 250);
+        List<SeckillAdmission.AdmissionResult> results = this.race(i -> 13800000000L);
+        long admitted = results.stream().filter(SeckillAdmission.AdmissionResult::isAdmitted).count();
+        assertEquals(1, admitted);
+        assertEquals(CALLERS - 1, results.stream().filter(SeckillAdmission.AdmissionResult::isRepeat).count());
+        assertEquals(999, this.remainStock(4));
+    }
+
+    private void warmUp(int shards, int stockPerShard) {
+        redisTemplate.opsForHash().put(SeckillRedisKey.SECKILL_STOCK_SHARD_HASH.join(TIME + ""), SECKILL_ID + "", shards + "");
+        for (int shard = 0; shard < shards; shard++) {
+            redisTemplate.opsForHash().put(stockShardRouter.stockKey(TIME, shard), SECKILL_ID + "", stockPerShard + "");
+        }
+    }
+
+    private List<SeckillAdmission.AdmissionResult> race(PhoneOf phoneOf) throws Exception {
+        SeckillProductVo sp = new SeckillProductVo();
+        sp.setId(SECKILL_ID);
+        sp.setTime(TIME);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<SeckillAdmission.AdmissionResult>> futures = new ArrayList<>(CALLERS);
+            for (int i = 0; i < CALLERS; i++) {
+                long phone = phoneOf.phone(i);
+                Callable<SeckillAdmission.AdmissionResult> caller = () -> {
+                    start.await();
+                    return admission.admit(sp, phone);
+                };
+                futures.add(executor.submit(caller));
+            }
+            start.countDown();
+            List<SeckillAdmission.AdmissionResult> results = new ArrayList<>(CALLERS);
+            for (Future<SeckillAdmission.AdmissionResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertSold(List<SeckillAdmission.AdmissionResult> results, int stock, int shards) {
+        long admitted = results.stream().filter(SeckillAdmission.AdmissionResult::isAdmitted).count();
+        assertEquals(stock, admitted);
+        assertEquals(CALLERS - stock, results.stream().filter(r -> !r.isAdmitted() && !r.isRepeat()).count());
+        assertEquals(0, this.remainStock(shards));
+        //每个成功的用户都留下了下单标识，售罄的用户不留标识
+        long flags = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            flags += redisTemplate.opsForHash().size(stockShardRouter.orderFlagKey(TIME, SECKILL_ID, shard));
+        }
+        assertEquals(stock, flags);
+    }
+
+    private long remainStock(int shards) {
+        long remain = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            Object value = redisTemplate.opsForHash().get(stockShardRouter.stockKey(TIME, shard), SECKILL_ID + "");
+            long count = Long.parseLong(value.toString());
+            assertTrue("stock of shard " + shard + " went negative: " + count, count >= 0);
+            remain += count;
+        }
+        return remain;
+    }
+
+    private static DefaultRedisScript<Long> script(String name) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/" + name));
+        return script;
+    }
+
+    private interface PhoneOf {
+        long phone(int caller);
+    }
+}
@@ -0,0 +1,156 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.redis.SeckillRedisKey;
+import cn.wolfcode.service.IOrderInfoService;
+import cn.wolfcode.service.ISeckillProductService;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 库存对账：在嵌入式redis上模拟 在途订单 + 超时取消 的组合
+ * MySQL库存10，每个场景两次采样，相同才修正
+ */
+public class StockDriftReconcilerTest {
+    private static final Integer TIME = 10;
+    private static final Long SECKILL_ID = 1L;
+    private static final long DB_STOCK = 10;
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private StockShardRouter stockShardRouter;
+    private IOrderInfoService orderInfoService;
+    private StockDriftReconciler reconciler;
+
+    @BeforeClass
+    public static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = RedisServer.builder().port(port).setting("bind 127.0.0.1").build();
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterClass
+    public static void stopRedis() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        stockShardRouter = new StockShardRouter(redisTemplate);
+        ISeckillProductService seckillProductService = Mockito.mock(ISeckillProductService.class);
+        Mockito.when(seckillProductService.selectStockCountId(SECKILL_ID)).thenReturn(DB_STOCK);
+        SessionWindowTable sessionWindowTable = Mockito.mock(SessionWindowTable.class);
+        Mockito.when(sessionWindowTable.openSessions()).thenReturn(Collections.singletonMap(SECKILL_ID, TIME));
+        orderInfoService = Mockito.mock(IOrderInfoService.class);
+        reconciler = new StockDriftReconciler(redisTemplate, Mockito.mock(ScheduledExecutorService.class), seckillProductService,
+                stockShardRouter, Mockito.mock(StockAllotmentEngine.class), sessionWindowTable, orderInfoService);
+        ReflectionTestUtils.setField(reconciler, "reconcileSeconds", 60L);
+        redisTemplate.opsForHash().put(SeckillRedisKey.SECKILL_STOCK_SHARD_HASH.join(TIME + ""), SECKILL_ID + "", "2");
+    }
+
+    @After
+    public void tearDown() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.flushAll();
+            return null;
+        });
+    }
+
+    @Test
+    public void inflightOrdersAreNotRefilledWhileOthersTimedOut() {
+        //2单在途：已准入(扣redis、写标识)，消费者停顿未落库
+        //2单超时取消：标识已删除，redis与MySQL都已回补，订单状态为超时，不计入订单数
+        this.givenRedis(4, 4, 2);
+        Mockito.when(orderInfoService.countFlaggedBySeckillId(SECKILL_ID)).thenReturn(0L);
+        this.twoRounds();
+        assertEquals(8, this.redisStock());
+    }
+
+    @Test
+    public void lostCompensationIsRefilledAfterTimeouts() {
+        //3单已落库(标识保留)，曾有订单超时取消；一次回补丢失，redis比MySQL少1，没有在途订单
+        this.givenRedis(5, 4, 3);
+        Mockito.when(orderInfoService.countFlaggedBySeckillId(SECKILL_ID)).thenReturn(3L);
+        this.twoRounds();
+        assertEquals(DB_STOCK, this.redisStock());
+    }
+
+    @Test
+    public void duplicatedCompensationIsTakenBackWithInflight() {
+        //redis比MySQL多2(重复补偿)，同时有1单在途：扣回漂移值
+        this.givenRedis(6, 6, 1);
+        Mockito.when(orderInfoService.countFlaggedBySeckillId(SECKILL_ID)).thenReturn(0L);
+        this.twoRounds();
+        assertEquals(DB_STOCK, this.redisStock());
+    }
+
+    @Test
+    public void changingSamplesAreNotCorrected() {
+        this.givenRedis(5, 4, 0);
+        Mockito.when(orderInfoService.countFlaggedBySeckillId(SECKILL_ID)).thenReturn(0L);
+        this.round();
+        //两次采样之间有新的准入
+        redisTemplate.opsForHash().increment(stockShardRouter.stockKey(TIME, 1), SECKILL_ID + "", -1);
+        redisTemplate.opsForHash().put(stockShardRouter.orderFlagKey(TIME, SECKILL_ID, 1), "13900000000", "1");
+        this.round();
+        assertEquals(8, this.redisStock());
+    }
+
+    private void givenRedis(long shard0, long shard1, int flags) {
+        redisTemplate.opsForHash().put(stockShardRouter.stockKey(TIME, 0), SECKILL_ID + "", shard0 + "");
+        redisTemplate.opsForHash().put(stockShardRouter.stockKey(TIME, 1), SECKILL_ID + "", shard1 + "");
+        for (int i = 0; i < flags; i++) {
+            long phone = 13800000000L + i;
+            redisTemplate.opsForHash().put(stockShardRouter.orderFlagKey(TIME, SECKILL_ID, phone), phone + "", "1");
+        }
+    }
+
+    private void twoRounds() {
+        this.round();
+        this.round();
+    }
+
+    private void round() {
+        //每一轮都重新竞争对账锁
+        redisTemplate.delete(SeckillRedisKey.SECKILL_STOCK_RECONCILE_LOCK.join(""));
+        reconciler.reconcile();
+    }
+
+    private long redisStock() {
+        long stock = 0;
+        for (int shard = 0; shard < 2; shard++) {
+            Object value = redisTemplate.opsForHash().get(stockShardRouter.stockKey(TIME, shard), SECKILL_ID + "");
+            stock += Long.parseLong(value.toString());
+        }
+        return stock;
+    }
+}
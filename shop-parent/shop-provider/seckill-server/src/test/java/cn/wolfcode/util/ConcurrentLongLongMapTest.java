@@ -0,0 +1,111 @@
+package cn.wolfcode.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentLongLongMapTest {
+
+    @Test
+    public void putGetRemove() {
+        ConcurrentLongLongMap map = new ConcurrentLongLongMap();
+        assertEquals(0, map.get(1));
+        map.put(1, 10);
+        map.put(Long.MAX_VALUE, 20);
+        map.put(-5, 30);
+        assertEquals(10, map.get(1));
+        assertEquals(20, map.get(Long.MAX_VALUE));
+        assertEquals(30, map.get(-5));
+        map.remove(1);
+        assertFalse(map.containsKey(1));
+        //删除后key仍占用槽位，再次写入复用该槽位
+        map.put(1, 11);
+        assertEquals(11, map.get(1));
+    }
+
+    @Test
+    public void updateAbsentKeyToZeroDoesNotInsert() {
+        ConcurrentLongLongMap map = new ConcurrentLongLongMap();
+        assertEquals(0, map.update(7, Long::sum, 0));
+        assertFalse(map.containsKey(7));
+        assertEquals(3, map.update(7, Long::sum, 3));
+        assertEquals(5, map.update(7, Long::sum, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroKeyIsRejected() {
+        new ConcurrentLongLongMap().put(0, 1);
+    }
+
+    @Test
+    public void probesAndResizesFromSmallTables() {
+        //每个分段初始只有4个槽位，写入大量key时需要线性探测并多次扩容
+        ConcurrentLongLongMap map = new ConcurrentLongLongMap(4);
+        int count = 100000;
+        for (long key = 1; key <= count; key++) {
+            map.put(key, key * 2);
+        }
+        for (long key = 1; key <= count; key++) {
+            assertEquals(key * 2, map.get(key));
+        }
+        assertEquals(0, map.get(count + 1));
+        map.clear();
+        for (long key = 1; key <= count; key++) {
+            assertFalse(map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void concurrentUpdatesAreNotLost() throws Exception {
+        ConcurrentLongLongMap map = new ConcurrentLongLongMap(4);
+        int threads = 8;
+        int keys = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    for (long key = 1; key <= keys; key++) {
+                        map.update(key, Long::sum, 1);
+                    }
+                    return null;
+                }));
+            }
+            //扩容期间无锁读：读到的计数只会在 0 ~ threads 之间
+            Future<?> reader = executor.submit(() -> {
+                start.await();
+                while (writing.get()) {
+                    for (long key = 1; key <= keys; key++) {
+                        long value = map.get(key);
+                        assertTrue("unexpected value " + value + " of key " + key, value >= 0 && value <= threads);
+                    }
+                }
+                return null;
+            });
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            writing.set(false);
+            reader.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        for (long key = 1; key <= keys; key++) {
+            assertEquals(threads, map.get(key));
+        }
+    }
+}
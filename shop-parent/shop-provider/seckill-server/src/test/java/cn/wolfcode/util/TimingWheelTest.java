@@ -0,0 +1,106 @@
+package cn.wolfcode.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 时间轮：第一层每格10ms共8格(80ms)，第二层每格80ms(640ms)，第三层每格640ms
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void expiredDeadlineIsRejected() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        assertFalse(wheel.add("a", 5));
+        assertFalse(wheel.add("b", -1));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void expiresInFirstLevel() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        assertTrue(wheel.add("a", 15));
+        assertTrue(wheel.add("b", 35));
+        assertEquals(Collections.emptyList(), wheel.advance(9));
+        assertEquals(Collections.singletonList("a"), wheel.advance(10));
+        assertEquals(1, wheel.size());
+        assertEquals(Collections.singletonList("b"), wheel.advance(100));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void bucketIsReusedAfterOneRound() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        assertTrue(wheel.add("a", 15));
+        assertEquals(Collections.singletonList("a"), wheel.advance(10));
+        //95 与 15 落在同一个格子(下标1)，格子flush后重新进入优先队列
+        assertTrue(wheel.add("b", 95));
+        assertEquals(Collections.emptyList(), wheel.advance(89));
+        assertEquals(Collections.singletonList("b"), wheel.advance(90));
+    }
+
+    @Test
+    public void overflowEntryIsReinsertedIntoLowerLevel() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        //超出第一层范围，放入第二层格子[480, 560)
+        assertTrue(wheel.add("a", 500));
+        assertEquals(Collections.emptyList(), wheel.advance(479));
+        //第二层格子到期，任务下降到第一层格子[500, 510)，尚未到期
+        assertEquals(Collections.emptyList(), wheel.advance(480));
+        assertEquals(1, wheel.size());
+        assertEquals(Collections.emptyList(), wheel.advance(499));
+        assertEquals(Collections.singletonList("a"), wheel.advance(500));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cascadesThroughThreeLevels() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        //超出第二层范围(640)，放入第三层
+        assertTrue(wheel.add("a", 1000));
+        assertTrue(wheel.add("b", 700));
+        assertEquals(Collections.singletonList("b"), wheel.advance(700));
+        assertEquals(Collections.emptyList(), wheel.advance(999));
+        assertEquals(Collections.singletonList("a"), wheel.advance(1000));
+    }
+
+    @Test
+    public void advanceReturnsEveryEntryOnlyOnce() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(10, 8, 0);
+        List<Integer> added = new ArrayList<>();
+        for (int i = 1; i <= 2000; i++) {
+            assertTrue(wheel.add(i, 10L + i * 3L));
+            added.add(i);
+        }
+        assertEquals(2000, wheel.size());
+        List<Integer> expired = new ArrayList<>();
+        for (long now = 0; now <= 7000; now += 7) {
+            List<Integer> batch = wheel.advance(now);
+            for (Integer item : batch) {
+                //到期时间不早于格子的起始时间
+                assertTrue(10L + item * 3L < now + 10);
+            }
+            expired.addAll(batch);
+        }
+        Collections.sort(expired);
+        assertEquals(added, expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void startTimeIsAlignedToTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1003);
+        //起始时间对齐到1000，[1000, 1010)内的任务已经到期
+        assertFalse(wheel.add("a", 1009));
+        assertTrue(wheel.add("b", 1010));
+        assertEquals(Arrays.asList("b"), wheel.advance(1010));
+    }
+}
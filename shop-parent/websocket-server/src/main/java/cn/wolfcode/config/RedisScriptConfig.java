@@ -0,0 +1,46 @@
+package cn.wolfcode.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+@Configuration
+public class RedisScriptConfig {
+
+    /**
+     * 值相同时才删除：连接关闭时只删除自己节点写入的归属
+     */
+    @Bean
+    public RedisScript<Long> compareAndDeleteScript() {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/compare_and_delete.lua"));
+        return script;
+    }
+
+    /**
+     * 续期连接归属：只续期当前节点的归属，已过期的重新登记
+     */
+    @Bean
+    public RedisScript<Long> renewOwnerScript() {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/renew_owner.lua"));
+        return script;
+    }
+
+    /**
+     * 原子领取暂存的订单结果
+     */
+    @Bean
+    public RedisScript<List> claimListScript() {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setResultType(List.class);
+        script.setLocation(new ClassPathResource("META-INF/scripts/claim_list.lua"));
+        return script;
+    }
+}
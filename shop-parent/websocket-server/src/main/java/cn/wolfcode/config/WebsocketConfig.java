@@ -1,14 +1,16 @@
 package cn.wolfcode.config;
 
 
-import org.checkerframework.checker.units.qual.C;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.server.standard.ServerEndpointExporter;
 
 @Configuration
 public class WebsocketConfig {
+    //netty模式下由NettyWebsocketServer处理连接，不再注册tomcat端点
     @Bean
+    @ConditionalOnProperty(name = "websocket.mode", havingValue = "servlet", matchIfMissing = true)
     public ServerEndpointExporter serverEndpointExporter(){
         return new ServerEndpointExporter();
     }
@@ -0,0 +1,25 @@
+package cn.wolfcode.core;
+
+/**
+ * 客户端连接，屏蔽 JSR-356 Session 与 netty Channel 的差异
+ */
+public interface ClientConnection {
+
+    boolean isOpen();
+
+    /**
+     * 向客户端发送文本
+     *
+     * @return 连接已关闭或写缓冲已满(背压)时返回false，由调用方暂存后重试
+     */
+    default boolean send(String text) {
+        return this.send(text, null);
+    }
+
+    /**
+     * 向客户端发送文本，返回true之后异步写失败时执行onFailure(例如把订单结果放回信箱)
+     *
+     * @return 连接已关闭或写缓冲已满(背压)时返回false，由调用方暂存后重试
+     */
+    boolean send(String text, Runnable onFailure);
+}
@@ -0,0 +1,79 @@
+package cn.wolfcode.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.Session;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * tomcat websocket 连接：异步写，同一时刻只有一条消息在发送
+ * 上一条还没有发送完(慢客户端)时拒绝写入(背压)，库存推送跳过本次，订单结果由信箱暂存；
+ * 发送完成后如果期间拒绝过写入，通知恢复可写，投递暂存的结果
+ */
+@Slf4j
+public class JsrClientConnection implements ClientConnection {
+
+    private final Session session;
+    private final Runnable onWritable;
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private final AtomicBoolean rejected = new AtomicBoolean();
+
+    public JsrClientConnection(Session session, Runnable onWritable) {
+        this.session = session;
+        this.onWritable = onWritable;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    @Override
+    public boolean send(String text, Runnable onFailure) {
+        if (!session.isOpen()) {
+            return false;
+        }
+        //同一个session不允许并发写：上一条还在发送时直接放弃，不阻塞推送线程
+        if (!this.acquire()) {
+            return false;
+        }
+        try {
+            session.getAsyncRemote().sendText(text, result -> {
+                if (!result.isOK()) {
+                    log.warn("[WebSocket] send failed:{}", text, result.getException());
+                    if (onFailure != null) {
+                        onFailure.run();
+                    }
+                }
+                this.release();
+            });
+            return true;
+        } catch (Exception e) {
+            log.warn("[WebSocket] send failed:{}", text, e);
+            this.release();
+            return false;
+        }
+    }
+
+    /**
+     * 先标记拒绝再重试一次：发送完成的回调可能在标记之前已经检查过rejected，
+     * 此时sending已经释放，重试会成功；重试失败说明有一条写入在进行中，它的回调一定能看到标记并通知可写
+     */
+    private boolean acquire() {
+        if (sending.compareAndSet(false, true)) {
+            return true;
+        }
+        rejected.set(true);
+        return sending.compareAndSet(false, true);
+    }
+
+    /**
+     * 释放发送权，期间拒绝过写入则通知可写，投递暂存的结果
+     */
+    private void release() {
+        sending.set(false);
+        if (rejected.getAndSet(false)) {
+            onWritable.run();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.mq.DefaultSendCallback;
+import cn.wolfcode.mq.MQConstant;
+import cn.wolfcode.mq.OrderMQResult;
+import cn.wolfcode.redis.WebsocketRedisKey;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 订单结果路由
+ * 1.客户端连接在当前节点：直接投递
+ * 2.其余情况先暂存到redis，再读取归属：
+ *   客户端连接在其他节点时通过 ORDER_RESULT_FORWARD_TOPIC:节点id 只转发token，归属节点收到后从redis领取并投递；
+ *   归属节点宕机(归属key过期前转发的消息无人消费)或客户端已经断开时，结果仍在redis中，客户端重连到任意节点onOpen时领取
+ * 3.客户端还没有连接：任意节点onOpen时领取；暂存后才读取归属，onOpen先登记归属再领取，两者不会错过
+ */
+@Slf4j
+@Component
+public class OrderResultRouter {
+
+    private final SessionRegistry sessionRegistry;
+    private final SessionOwnerRegistry sessionOwnerRegistry;
+    private final PendingResultMailbox pendingResultMailbox;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<List> claimListScript;
+    private final RocketMQTemplate rocketMQTemplate;
+    private DefaultMQPushConsumer forwardConsumer;
+
+    @Value("${rocketmq.name-server}")
+    private String nameServer;
+
+    public OrderResultRouter(SessionRegistry sessionRegistry, SessionOwnerRegistry sessionOwnerRegistry, PendingResultMailbox pendingResultMailbox, StringRedisTemplate redisTemplate, RedisScript<List> claimListScript, RocketMQTemplate rocketMQTemplate) {
+        this.sessionRegistry = sessionRegistry;
+        this.sessionOwnerRegistry = sessionOwnerRegistry;
+        this.pendingResultMailbox = pendingResultMailbox;
+        this.redisTemplate = redisTemplate;
+        this.claimListScript = claimListScript;
+        this.rocketMQTemplate = rocketMQTemplate;
+    }
+
+    /**
+     * 每个节点单独的消费者组，只订阅tag为当前节点id的转发消息
+     */
+    @PostConstruct
+    public void init() throws MQClientException {
+        String nodeId = sessionOwnerRegistry.getNodeId();
+        forwardConsumer = new DefaultMQPushConsumer(MQConstant.ORDER_RESULT_FORWARD_CONSUMER_GROUP + "_" + nodeId);
+        forwardConsumer.setNamesrvAddr(nameServer);
+        forwardConsumer.subscribe(MQConstant.ORDER_RESULT_FORWARD_TOPIC, nodeId);
+        forwardConsumer.registerMessageListener((MessageListenerConcurrently) (msgs, context) -> {
+            for (MessageExt msg : msgs) {
+                String body = new String(msg.getBody(), StandardCharsets.UTF_8);
+                if (body.startsWith("{")) {
+                    //升级前的节点转发的是完整结果
+                    pendingResultMailbox.deliver(JSON.parseObject(body, OrderMQResult.class).getToken(), body);
+                } else {
+                    this.onForward(body);
+                }
+            }
+            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+        });
+        forwardConsumer.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (forwardConsumer != null) {
+            forwardConsumer.shutdown();
+        }
+    }
+
+    public void route(OrderMQResult result) {
+        String token = result.getToken();
+        String json = JSON.toJSONString(result);
+        //连接就在当前节点，不需要查询归属
+        if (sessionRegistry.contains(token)) {
+            pendingResultMailbox.deliver(token, json);
+            return;
+        }
+        WebsocketRedisKey key = WebsocketRedisKey.WS_PENDING_RESULT;
+        redisTemplate.opsForList().rightPush(key.join(token), json);
+        redisTemplate.expire(key.join(token), key.getExpireTime(), key.getUnit());
+        String owner = sessionOwnerRegistry.owner(token);
+        if (owner == null) {
+            return;
+        }
+        if (owner.equals(sessionOwnerRegistry.getNodeId())) {
+            this.onForward(token);
+            return;
+        }
+        rocketMQTemplate.asyncSend(MQConstant.ORDER_RESULT_FORWARD_TOPIC + ":" + owner, token,
+                new DefaultSendCallback("forward order result"));
+    }
+
+    /**
+     * 收到转发的token：连接仍在当前节点才领取redis中的结果，否则留给客户端重连的节点领取
+     */
+    private void onForward(String token) {
+        if (sessionRegistry.contains(token)) {
+            this.onOpen(token);
+        }
+    }
+
+    /**
+     * 客户端连接到当前节点后，领取连接之前暂存在redis中的结果
+     */
+    public void onOpen(String token) {
+        for (String pending : this.claimPending(token)) {
+            pendingResultMailbox.deliver(token, pending);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> claimPending(String token) {
+        List<String> values = redisTemplate.execute(claimListScript,
+                Collections.singletonList(WebsocketRedisKey.WS_PENDING_RESULT.join(token)));
+        return values == null ? Collections.emptyList() : values;
+    }
+}
@@ -0,0 +1,118 @@
+package cn.wolfcode.core;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单结果信箱
+ * 1.订单结果到达时客户端还没有建立连接(或写缓冲已满)，先按token暂存，不阻塞MQ消费线程
+ * 2.客户端连接(onOpen)/恢复可写后立即投递暂存的结果
+ * 3.超过ttl仍未连接的结果定时清除
+ * 4.发送后异步写失败(连接已断开)的结果放回信箱，客户端重连后再次投递
+ */
+@Component
+public class PendingResultMailbox {
+
+    private final SessionRegistry sessionRegistry;
+    private final Map<String, Queue<Parked>> mailbox = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pending-result-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${websocket.mailbox.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    public PendingResultMailbox(SessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        sweeper.scheduleWithFixedDelay(this::evictExpired, ttlSeconds, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * 投递订单结果：客户端已连接直接发送，否则暂存(未连接或写缓冲已满)
+     */
+    public void deliver(String token, String json) {
+        ClientConnection connection = sessionRegistry.get(token);
+        if (connection != null && connection.send(json, () -> this.park(token, json))) {
+            return;
+        }
+        this.park(token, json);
+        //暂存期间客户端可能刚好连接上/恢复可写(已经flush过)，再检查一次
+        connection = sessionRegistry.get(token);
+        if (connection != null) {
+            this.flush(token);
+        }
+    }
+
+    /**
+     * 客户端连接后投递所有暂存的结果，发送失败(背压)的放回信箱等待下次flush
+     */
+    public void flush(String token) {
+        ClientConnection connection = sessionRegistry.get(token);
+        if (connection == null) {
+            return;
+        }
+        Queue<Parked> parked = mailbox.remove(token);
+        if (parked == null) {
+            return;
+        }
+        Parked p;
+        while ((p = parked.peek()) != null) {
+            String json = p.json;
+            if (connection.send(json, () -> this.park(token, json))) {
+                parked.poll();
+            } else {
+                Queue<Parked> current = mailbox.putIfAbsent(token, parked);
+                if (current != null) {
+                    current.addAll(parked);
+                }
+                return;
+            }
+        }
+    }
+
+    private void park(String token, String json) {
+        mailbox.computeIfAbsent(token, k -> new ConcurrentLinkedQueue<>())
+                .add(new Parked(json, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds)));
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        mailbox.forEach((token, queue) -> {
+            queue.removeIf(p -> p.expireAt <= now);
+            if (queue.isEmpty()) {
+                mailbox.remove(token, queue);
+            }
+        });
+    }
+
+    private static class Parked {
+        private final String json;
+        private final long expireAt;
+
+        Parked(String json, long expireAt) {
+            this.json = json;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.redis.WebsocketRedisKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端连接建立/关闭时的处理，tomcat与netty两种模式共用
+ */
+@Slf4j
+@Component
+public class SessionLifecycle {
+    //订阅场次实时库存：sub:{time}
+    private static final String SUBSCRIBE_PREFIX = "sub:";
+
+    private final SessionRegistry sessionRegistry;
+    private final SessionOwnerRegistry sessionOwnerRegistry;
+    private final PendingResultMailbox pendingResultMailbox;
+    private final OrderResultRouter orderResultRouter;
+    private final StockSubscriptions stockSubscriptions;
+
+    private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "session-owner-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SessionLifecycle(SessionRegistry sessionRegistry, SessionOwnerRegistry sessionOwnerRegistry, PendingResultMailbox pendingResultMailbox, OrderResultRouter orderResultRouter, StockSubscriptions stockSubscriptions) {
+        this.sessionRegistry = sessionRegistry;
+        this.sessionOwnerRegistry = sessionOwnerRegistry;
+        this.pendingResultMailbox = pendingResultMailbox;
+        this.orderResultRouter = orderResultRouter;
+        this.stockSubscriptions = stockSubscriptions;
+    }
+
+    /**
+     * 归属key在onOpen时写入，存活的连接每1/3过期时间续期一次
+     */
+    @PostConstruct
+    public void init() {
+        WebsocketRedisKey key = WebsocketRedisKey.WS_SESSION_OWNER;
+        long period = Math.max(1, key.getUnit().toSeconds(key.getExpireTime()) / 3);
+        renewer.scheduleWithFixedDelay(this::renewOwners, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        renewer.shutdownNow();
+    }
+
+    private void renewOwners() {
+        try {
+            //归属曾经过期：过期期间其他节点收到的结果暂存在redis中，重新领取
+            for (String token : sessionOwnerRegistry.renew(sessionRegistry.tokens())) {
+                orderResultRouter.onOpen(token);
+            }
+        } catch (Exception e) {
+            log.warn("[WebSocket] renew session owners failed", e);
+        }
+    }
+
+    public void onOpen(String token, ClientConnection connection) {
+        log.info("[WebSocket] new client connected:{}", token);
+        //将连接对象保存起来
+        sessionRegistry.put(token, connection);
+        //登记连接所在节点，其他节点收到该用户的订单结果时转发到当前节点
+        sessionOwnerRegistry.register(token);
+        //投递连接之前到达的订单结果(本地信箱 + redis暂存)
+        pendingResultMailbox.flush(token);
+        orderResultRouter.onOpen(token);
+    }
+
+    public void onClose(String token, ClientConnection connection) {
+        log.info("[WebSocket] close connection:{}", token);
+        stockSubscriptions.unsubscribe(connection);
+        if (sessionRegistry.remove(token, connection)) {
+            sessionOwnerRegistry.unregister(token);
+        }
+    }
+
+    /**
+     * 客户端发送的文本消息
+     */
+    public void onMessage(String token, ClientConnection connection, String text) {
+        if (text.startsWith(SUBSCRIBE_PREFIX)) {
+            try {
+                stockSubscriptions.subscribe(Integer.valueOf(text.substring(SUBSCRIBE_PREFIX.length()).trim()), connection);
+            } catch (NumberFormatException e) {
+                log.info("[WebSocket] illegal subscription from {}:{}", token, text);
+            }
+        }
+    }
+
+    /**
+     * 写缓冲恢复可写(netty)/上一条消息发送完成(tomcat)后，投递背压期间暂存的结果
+     */
+    public void onWritable(String token) {
+        pendingResultMailbox.flush(token);
+    }
+}
@@ -0,0 +1,109 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.redis.WebsocketRedisKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 客户端连接归属登记：token => 连接所在的websocket节点
+ * 每个token一个带过期时间的key，节点宕机后归属自动过期，不会一直残留；
+ * 连接存活期间定时续期(renew)，长时间打开的页面不会因为归属过期而收不到订单结果
+ */
+@Slf4j
+@Component
+public class SessionOwnerRegistry {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<Long> compareAndDeleteScript;
+    private final RedisScript<Long> renewOwnerScript;
+    private final String nodeId;
+
+    public SessionOwnerRegistry(StringRedisTemplate redisTemplate, RedisScript<Long> compareAndDeleteScript, RedisScript<Long> renewOwnerScript,
+                                @Value("${websocket.node-id:}") String nodeId, @Value("${server.port:8080}") int port) {
+        this.redisTemplate = redisTemplate;
+        this.compareAndDeleteScript = compareAndDeleteScript;
+        this.renewOwnerScript = renewOwnerScript;
+        this.nodeId = nodeId.isEmpty() ? defaultNodeId(port) : nodeId;
+        log.info("[WebSocket] current node id:{}", this.nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void register(String token) {
+        WebsocketRedisKey key = WebsocketRedisKey.WS_SESSION_OWNER;
+        redisTemplate.opsForValue().set(key.join(token), nodeId, key.getExpireTime(), key.getUnit());
+    }
+
+    /**
+     * 一次pipeline续期当前节点所有连接的归属
+     *
+     * @return 归属已经过期、本次重新登记的token，调用方需要领取过期期间暂存在redis中的结果
+     */
+    public List<String> renew(Collection<String> tokens) {
+        List<String> list = new ArrayList<>(tokens);
+        if (list.isEmpty()) {
+            return Collections.emptyList();
+        }
+        WebsocketRedisKey key = WebsocketRedisKey.WS_SESSION_OWNER;
+        String ttl = key.getUnit().toSeconds(key.getExpireTime()) + "";
+        String script = renewOwnerScript.getScriptAsString();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String token : list) {
+                conn.eval(script, ReturnType.INTEGER, 1, key.join(token), nodeId, ttl);
+            }
+            return null;
+        });
+        List<String> reclaimed = new ArrayList<>();
+        for (int i = 0; i < list.size(); i++) {
+            Object result = results.get(i);
+            if (result != null && Long.parseLong(result.toString()) == 2) {
+                reclaimed.add(list.get(i));
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * 只删除当前节点的归属，客户端已经重连到其他节点时不受影响
+     */
+    public void unregister(String token) {
+        redisTemplate.execute(compareAndDeleteScript,
+                Collections.singletonList(WebsocketRedisKey.WS_SESSION_OWNER.join(token)), nodeId);
+    }
+
+    /**
+     * 连接所在的节点，未连接返回null
+     */
+    public String owner(String token) {
+        return redisTemplate.opsForValue().get(WebsocketRedisKey.WS_SESSION_OWNER.join(token));
+    }
+
+    /**
+     * 默认节点id：ip_port，只包含消息tag与消费者组允许的字符
+     */
+    private static String defaultNodeId(int port) {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return (host + "_" + port).replaceAll("[^a-zA-Z0-9_-]", "_");
+    }
+}
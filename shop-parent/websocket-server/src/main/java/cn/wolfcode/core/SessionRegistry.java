@@ -0,0 +1,45 @@
+package cn.wolfcode.core;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 当前节点的客户端连接：token => 连接
+ */
+@Component
+public class SessionRegistry {
+
+    private final Map<String, ClientConnection> connections = new ConcurrentHashMap<>();
+
+    public void put(String token, ClientConnection connection) {
+        connections.put(token, connection);
+    }
+
+    /**
+     * 同一token重新连接后，旧连接的关闭不能移除新连接
+     *
+     * @return 是否移除
+     */
+    public boolean remove(String token, ClientConnection connection) {
+        return connections.remove(token, connection);
+    }
+
+    public ClientConnection get(String token) {
+        return connections.get(token);
+    }
+
+    public boolean contains(String token) {
+        return connections.containsKey(token);
+    }
+
+    public Set<String> tokens() {
+        return connections.keySet();
+    }
+
+    public int size() {
+        return connections.size();
+    }
+}
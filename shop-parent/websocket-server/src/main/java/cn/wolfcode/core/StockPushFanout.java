@@ -0,0 +1,92 @@
+package cn.wolfcode.core;
+
+import cn.wolfcode.mq.StockPushMessage;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实时库存推送给客户端
+ * 1.多个秒杀节点的库存消息只保留每个商品的最新值
+ * 2.定时按场次推送给订阅的客户端，每个商品每秒最多推送rate次
+ * 3.写缓冲已满或上一条还在发送的连接直接跳过本次推送，下次推送的是更新的值，慢客户端不会拖慢其他连接
+ * 推送内容：{"type":"stock","time":10,"items":[{"seckillId":1,"currentCount":9,"soldOut":false}]}
+ */
+@Slf4j
+@Component
+public class StockPushFanout {
+
+    private static final String TYPE = "stock";
+
+    private final StockSubscriptions stockSubscriptions;
+    private final Map<Integer, Map<Long, StockPushMessage.StockItem>> latest = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "stock-push-fanout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${websocket.stock.push.rate:2}")
+    private int rate;
+
+    public StockPushFanout(StockSubscriptions stockSubscriptions) {
+        this.stockSubscriptions = stockSubscriptions;
+    }
+
+    @PostConstruct
+    public void init() {
+        long period = Math.max(1, 1000 / Math.max(1, rate));
+        ticker.scheduleWithFixedDelay(this::flush, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        ticker.shutdownNow();
+    }
+
+    public void onMessage(StockPushMessage message) {
+        Map<Long, StockPushMessage.StockItem> items = latest.computeIfAbsent(message.getTime(), k -> new ConcurrentHashMap<>());
+        for (StockPushMessage.StockItem item : message.getItems()) {
+            items.put(item.getSeckillId(), item);
+        }
+    }
+
+    private void flush() {
+        try {
+            latest.forEach((time, items) -> {
+                if (items.isEmpty()) {
+                    return;
+                }
+                List<StockPushMessage.StockItem> changed = new ArrayList<>(items.size());
+                for (Long seckillId : items.keySet()) {
+                    StockPushMessage.StockItem item = items.remove(seckillId);
+                    if (item != null) {
+                        changed.add(item);
+                    }
+                }
+                Map<String, Object> push = new HashMap<>();
+                push.put("type", TYPE);
+                push.put("time", time);
+                push.put("items", changed);
+                String json = JSON.toJSONString(push);
+                for (ClientConnection connection : stockSubscriptions.subscribers(time)) {
+                    connection.send(json);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("[库存推送] 推送实时库存异常", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package cn.wolfcode.core;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实时库存订阅：场次 => 订阅该场次的客户端连接
+ * 每个连接同一时间只订阅一个场次(列表页切换场次时重新订阅)
+ */
+@Component
+public class StockSubscriptions {
+
+    private final Map<Integer, Set<ClientConnection>> subscribers = new ConcurrentHashMap<>();
+    private final Map<ClientConnection, Integer> subscribed = new ConcurrentHashMap<>();
+
+    public void subscribe(Integer time, ClientConnection connection) {
+        this.unsubscribe(connection);
+        subscribers.computeIfAbsent(time, k -> ConcurrentHashMap.newKeySet()).add(connection);
+        subscribed.put(connection, time);
+    }
+
+    public void unsubscribe(ClientConnection connection) {
+        Integer time = subscribed.remove(connection);
+        if (time != null) {
+            Set<ClientConnection> set = subscribers.get(time);
+            if (set != null) {
+                set.remove(connection);
+            }
+        }
+    }
+
+    public Set<ClientConnection> subscribers(Integer time) {
+        return subscribers.getOrDefault(time, Collections.emptySet());
+    }
+}
@@ -2,34 +2,46 @@ package cn.wolfcode.core;
 
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.websocket.OnClose;
 import javax.websocket.OnError;
+import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @ServerEndpoint("/{token}")
 @Component
 public class WebsocketServer {
 
-    public static Map<String,Session> SESSION_MAP = new ConcurrentHashMap<>();
+    private static final String CONNECTION = "connection";
+    //端点实例由websocket容器创建，通过静态字段使用spring bean
+    private static SessionLifecycle LIFECYCLE;
+
+    @Autowired
+    public void setLifecycle(SessionLifecycle lifecycle) {
+        LIFECYCLE = lifecycle;
+    }
+
     @OnOpen
     public void onOpen(Session session, @PathParam("token") String token){
-        log.info("[WebSocket] new client connected:{}",token);
-        //将连接对象session保存起来
-        SESSION_MAP.put(token,session);
+        ClientConnection connection = new JsrClientConnection(session, () -> LIFECYCLE.onWritable(token));
+        session.getUserProperties().put(CONNECTION, connection);
+        LIFECYCLE.onOpen(token, connection);
     }
 
     @OnClose
-    public void onClose(@PathParam("token") String token){
-        log.info("[WebSocket] close connection:{}",token);
-        SESSION_MAP.remove(token);
+    public void onClose(Session session, @PathParam("token") String token){
+        LIFECYCLE.onClose(token, (ClientConnection) session.getUserProperties().get(CONNECTION));
+    }
+
+    @OnMessage
+    public void onMessage(Session session, @PathParam("token") String token, String text){
+        LIFECYCLE.onMessage(token, (ClientConnection) session.getUserProperties().get(CONNECTION), text);
     }
 
     @OnError
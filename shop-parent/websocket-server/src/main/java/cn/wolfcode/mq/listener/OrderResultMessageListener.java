@@ -1,6 +1,6 @@
 package cn.wolfcode.mq.listener;
 
-import cn.wolfcode.core.WebsocketServer;
+import cn.wolfcode.core.OrderResultRouter;
 import cn.wolfcode.mq.MQConstant;
 import cn.wolfcode.mq.OrderMQResult;
 import com.alibaba.fastjson.JSON;
@@ -9,10 +9,6 @@ import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.springframework.stereotype.Component;
 
-import javax.websocket.Session;
-import java.io.IOException;
-import java.sql.Time;
-
 @RocketMQMessageListener(
         consumerGroup = MQConstant.ORDER_RESULT_CONSUMER_GROUP,
         topic = MQConstant.ORDER_RESULT_TOPIC
@@ -21,27 +17,16 @@ import java.sql.Time;
 @Slf4j
 public class OrderResultMessageListener implements RocketMQListener <OrderMQResult>{
 
+    private final OrderResultRouter orderResultRouter;
+
+    public OrderResultMessageListener(OrderResultRouter orderResultRouter) {
+        this.orderResultRouter = orderResultRouter;
+    }
+
     @Override
     public void onMessage(OrderMQResult orderMQResult) {
-        String json = JSON.toJSONString(orderMQResult);
-        log.info("[order results]receive msg of creating order:{}",json);
-        //根据token获取到session对象
-        try {
-            int count = 0;
-            do {
-                Session session = WebsocketServer.SESSION_MAP.get(orderMQResult.getToken());
-                if (session != null) {
-                    //通过session对象 将数据写到前端
-                    session.getBasicRemote().sendText(json);
-                    return;
-                }
-                count++;
-                log.info("[order result] nums:{}get session object failed,try again",count);
-                //
-                Thread.sleep(1000);
-            }while (count<=5);//5s拿不到就通知
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log.info("[order results]receive msg of creating order:{}",JSON.toJSONString(orderMQResult));
+        //投递到客户端连接所在的节点，客户端未连接时暂存，连接后再投递，不阻塞消费线程
+        orderResultRouter.route(orderMQResult);
     }
 }
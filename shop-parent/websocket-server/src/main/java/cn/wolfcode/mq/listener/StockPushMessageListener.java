@@ -0,0 +1,31 @@
+package cn.wolfcode.mq.listener;
+
+import cn.wolfcode.core.StockPushFanout;
+import cn.wolfcode.mq.MQConstant;
+import cn.wolfcode.mq.StockPushMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.annotation.MessageModel;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.springframework.stereotype.Component;
+
+@RocketMQMessageListener(
+        consumerGroup = MQConstant.SECKILL_STOCK_PUSH_CONSUMER_GROUP,
+        topic = MQConstant.SECKILL_STOCK_PUSH_TOPIC,
+        messageModel = MessageModel.BROADCASTING //每个websocket节点推送给自己的订阅者
+)
+@Component
+@Slf4j
+public class StockPushMessageListener implements RocketMQListener<StockPushMessage> {
+
+    private final StockPushFanout stockPushFanout;
+
+    public StockPushMessageListener(StockPushFanout stockPushFanout) {
+        this.stockPushFanout = stockPushFanout;
+    }
+
+    @Override
+    public void onMessage(StockPushMessage message) {
+        stockPushFanout.onMessage(message);
+    }
+}
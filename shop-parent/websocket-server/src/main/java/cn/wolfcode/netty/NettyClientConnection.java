@@ -0,0 +1,41 @@
+package cn.wolfcode.netty;
+
+import cn.wolfcode.core.ClientConnection;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * netty websocket 连接：异步写，写缓冲超过高水位时拒绝写入(背压)
+ * 写入失败(连接已断开等)时回调onFailure
+ */
+@Slf4j
+public class NettyClientConnection implements ClientConnection {
+
+    private final Channel channel;
+
+    public NettyClientConnection(Channel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isActive();
+    }
+
+    @Override
+    public boolean send(String text, Runnable onFailure) {
+        if (!channel.isActive() || !channel.isWritable()) {
+            return false;
+        }
+        channel.writeAndFlush(new TextWebSocketFrame(text)).addListener(future -> {
+            if (!future.isSuccess()) {
+                log.warn("[WebSocket] send failed:{}", text, future.cause());
+                if (onFailure != null) {
+                    onFailure.run();
+                }
+            }
+        });
+        return true;
+    }
+}
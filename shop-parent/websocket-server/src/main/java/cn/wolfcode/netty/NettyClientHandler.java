@@ -0,0 +1,108 @@
+package cn.wolfcode.netty;
+
+import cn.wolfcode.core.ClientConnection;
+import cn.wolfcode.core.SessionLifecycle;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * netty websocket 连接处理
+ * 1.握手完成后从请求路径 /{token} 中取出token，登记连接
+ * 2.客户端发送的任意帧(包括心跳ping)都会刷新空闲时间，超过空闲时间没有数据则关闭连接
+ * 3.写缓冲恢复可写后投递背压期间暂存的结果
+ * 无状态，所有连接共用一个实例
+ */
+@Slf4j
+@ChannelHandler.Sharable
+public class NettyClientHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
+
+    private static final AttributeKey<String> TOKEN = AttributeKey.valueOf("token");
+    private static final AttributeKey<ClientConnection> CONNECTION = AttributeKey.valueOf("connection");
+    private static final String PING = "ping";
+    private static final String PONG = "pong";
+
+    private final SessionLifecycle sessionLifecycle;
+
+    public NettyClientHandler(SessionLifecycle sessionLifecycle) {
+        this.sessionLifecycle = sessionLifecycle;
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+            String token = this.parseToken(((WebSocketServerProtocolHandler.HandshakeComplete) evt).requestUri());
+            if (token.isEmpty()) {
+                ctx.close();
+                return;
+            }
+            ClientConnection connection = new NettyClientConnection(ctx.channel());
+            ctx.channel().attr(TOKEN).set(token);
+            ctx.channel().attr(CONNECTION).set(connection);
+            sessionLifecycle.onOpen(token, connection);
+            return;
+        }
+        if (evt instanceof IdleStateEvent) {
+            log.info("[WebSocket] idle connection closed:{}", ctx.channel().attr(TOKEN).get());
+            ctx.close();
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
+        if (!(frame instanceof TextWebSocketFrame)) {
+            return;
+        }
+        String text = ((TextWebSocketFrame) frame).text();
+        //应用层心跳
+        if (PING.equals(text)) {
+            ctx.writeAndFlush(new TextWebSocketFrame(PONG));
+            return;
+        }
+        String token = ctx.channel().attr(TOKEN).get();
+        if (token != null) {
+            sessionLifecycle.onMessage(token, ctx.channel().attr(CONNECTION).get(), text);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        String token = ctx.channel().attr(TOKEN).get();
+        if (token != null && ctx.channel().isWritable()) {
+            sessionLifecycle.onWritable(token);
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        String token = ctx.channel().attr(TOKEN).get();
+        if (token != null) {
+            sessionLifecycle.onClose(token, ctx.channel().attr(CONNECTION).get());
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.info("[WebSocket] abnormal connection:{}", ctx.channel().attr(TOKEN).get(), cause);
+        ctx.close();
+    }
+
+    /**
+     * /{token}?xxx => token
+     */
+    private String parseToken(String uri) {
+        int end = uri.indexOf('?');
+        String path = end < 0 ? uri : uri.substring(0, end);
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+}
@@ -0,0 +1,98 @@
+package cn.wolfcode.netty;
+
+import cn.wolfcode.core.SessionLifecycle;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * netty websocket 网关(websocket.mode=netty)
+ * 1.少量事件循环线程处理所有连接，连接不占用容器线程
+ * 2.每个连接的内存预算：接收缓冲按需伸缩(最大recv-buffer-max)，写缓冲超过高水位后拒绝写入，
+ *   客户端帧最大max-frame-bytes
+ * 3.超过idle-seconds没有收到客户端任何数据(包括心跳)则关闭连接
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "websocket.mode", havingValue = "netty")
+public class NettyWebsocketServer {
+
+    private final SessionLifecycle sessionLifecycle;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+
+    @Value("${websocket.netty.port:9090}")
+    private int port;
+    @Value("${websocket.netty.worker-threads:0}")
+    private int workerThreads;
+    @Value("${websocket.netty.idle-seconds:60}")
+    private int idleSeconds;
+    @Value("${websocket.netty.max-frame-bytes:4096}")
+    private int maxFrameBytes;
+    @Value("${websocket.netty.recv-buffer-max:4096}")
+    private int recvBufferMax;
+    @Value("${websocket.netty.write-low-water-mark:8192}")
+    private int writeLowWaterMark;
+    @Value("${websocket.netty.write-high-water-mark:32768}")
+    private int writeHighWaterMark;
+
+    public NettyWebsocketServer(SessionLifecycle sessionLifecycle) {
+        this.sessionLifecycle = sessionLifecycle;
+    }
+
+    @PostConstruct
+    public void start() throws InterruptedException {
+        NettyClientHandler clientHandler = new NettyClientHandler(sessionLifecycle);
+        bossGroup = new NioEventLoopGroup(1);
+        workerGroup = new NioEventLoopGroup(workerThreads);
+        new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.RCVBUF_ALLOCATOR, new AdaptiveRecvByteBufAllocator(64, 512, recvBufferMax))
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(writeLowWaterMark, writeHighWaterMark))
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                                .addLast(new IdleStateHandler(idleSeconds, 0, 0, TimeUnit.SECONDS))
+                                .addLast(new HttpServerCodec())
+                                .addLast(new HttpObjectAggregator(maxFrameBytes))
+                                //路径 /{token}，按前缀匹配
+                                .addLast(new WebSocketServerProtocolHandler("/", null, false, maxFrameBytes, false, true))
+                                .addLast(clientHandler);
+                    }
+                })
+                .bind(port).sync();
+        log.info("[WebSocket] netty websocket server started on port:{}", port);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package cn.wolfcode.redis;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * websocket节点使用的redis key
+ */
+@Getter
+public enum WebsocketRedisKey {
+    //token => 客户端连接所在的节点id，存活的连接每1/3过期时间续期，节点宕机后1分钟内过期
+    WS_SESSION_OWNER("wsSessionOwner:", TimeUnit.SECONDS, 60),
+    //等待领取的订单结果，保留到宕机节点的归属过期之后，客户端重连到其他节点时仍能领取
+    WS_PENDING_RESULT("wsPendingResult:", TimeUnit.SECONDS, 60);
+
+    WebsocketRedisKey(String prefix, TimeUnit unit, int expireTime) {
+        this.prefix = prefix;
+        this.unit = unit;
+        this.expireTime = expireTime;
+    }
+
+    public String join(String key) {
+        return this.prefix + key;
+    }
+
+    private String prefix;
+    private TimeUnit unit;
+    private int expireTime;
+}
@@ -0,0 +1,5 @@
+-- KEYS[1]: list key
+-- 原子取出并删除整个list，多个节点同时领取时只有一个能拿到数据
+local values = redis.call('LRANGE', KEYS[1], 0, -1)
+redis.call('DEL', KEYS[1])
+return values
@@ -0,0 +1,6 @@
+-- KEYS[1]: key  ARGV[1]: 期望的值
+-- 只有值相同时才删除，避免删除其他节点写入的值
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,12 @@
+-- KEYS[1]: key  ARGV[1]: 当前节点id  ARGV[2]: 过期时间(秒)
+-- 归属仍是当前节点时续期返回1；归属已过期时重新登记返回2；已被其他节点登记(客户端重连)返回0
+local owner = redis.call('GET', KEYS[1])
+if owner == ARGV[1] then
+    redis.call('EXPIRE', KEYS[1], ARGV[2])
+    return 1
+end
+if owner == false then
+    redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2])
+    return 2
+end
+return 0